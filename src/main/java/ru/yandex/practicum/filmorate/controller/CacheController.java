@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.service.CacheService;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStats;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@RequestMapping("/cache")
+public class CacheController {
+    private final CacheService cacheService;
+
+    @GetMapping("/stats")
+    public List<CacheStats> getStats() {
+        return cacheService.getStats();
+    }
+}
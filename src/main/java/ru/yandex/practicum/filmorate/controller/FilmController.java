@@ -1,24 +1,33 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PastOrPresent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exception.BadRequestParamException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.InputStream;
 import java.time.Year;
 import java.util.Collection;
 import java.util.List;
@@ -28,7 +37,12 @@ import java.util.List;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @RequestMapping("/films")
 public class FilmController {
+    private static final String NDJSON = "application/x-ndjson";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
     private final FilmService filmService;
+    private final FilmImportService filmImportService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/{id}")
     public Film get(@PathVariable Long id) {
@@ -36,8 +50,8 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public Collection<Film> getPopular(@RequestParam(required = false)
-                                           Long count,
+    public Collection<Film> getPopular(@RequestParam(defaultValue = "10")
+                                       Long count,
 
                                        @RequestParam(required = false)
                                        Long genreId,
@@ -53,14 +67,23 @@ public class FilmController {
                                           Long directorId,
 
                                           @RequestParam
-                                          String sortBy) {
+                                          String sortBy,
+
+                                          @RequestParam(required = false)
+                                          Long afterId,
+
+                                          @RequestParam(required = false)
+                                          Long limit,
+
+                                          @RequestParam(required = false)
+                                          String fields) {
         // я попытался задать ограничение через
         // @Pattern(regexp = "year|likes", message = "Поддерживаются только значения: year, likes")
         // но почему-то в ApplicationExceptionHandler исключение приземляется в handleOther
         // и ответ получается неинформативным. На данный момент не разобрался ещё с этим, поэтому сделал так
         switch (sortBy) {
             case "year", "likes" -> {
-                return filmService.getByDirector(directorId, sortBy);
+                return filmService.getByDirector(directorId, sortBy, afterId, limit, fields);
             }
             default -> {
                 log.info("Попытка получить список фильмов по режиссёру с неподдерживаемым sortBy: {}", sortBy);
@@ -75,17 +98,23 @@ public class FilmController {
     }
 
     @GetMapping
-    public Collection<Film> getAll() {
-        return filmService.getAll();
+    public ResponseEntity<StreamingResponseBody> getAll(@RequestParam(required = false) Long afterId,
+                                                        @RequestParam(required = false) Long limit,
+                                                        @RequestParam(required = false) String fields) {
+        return StreamingJson.array(objectMapper, filmService.stream(afterId, limit, fields));
     }
 
     @GetMapping("/search")
-    public Collection<Film> search(@RequestParam @NotNull String query, @RequestParam @NotNull String by) {
+    public Collection<Film> search(@RequestParam @NotNull String query,
+                                   @RequestParam @NotNull String by,
+                                   @RequestParam(required = false) Long afterId,
+                                   @RequestParam(required = false) Long limit,
+                                   @RequestParam(required = false) String fields) {
         if (!by.contains("title") && !by.contains("director")) {
             log.info("Попытка поиска с неподдерживаемым значением параметра by: {}", by);
             throw new BadRequestParamException("Параметр by может принимать значения: title, director или оба значения через запятую");
         }
-        return filmService.search(query, by);
+        return filmService.search(query, by, afterId, limit, fields);
     }
 
     @PostMapping
@@ -93,6 +122,28 @@ public class FilmController {
         return filmService.add(film);
     }
 
+    // Массовая загрузка: JSON-объект фильма на строку (application/x-ndjson) или CSV с заголовком (text/csv).
+    // Корректные строки записываются, по остальным возвращаются номера строк и причины
+    @PostMapping(value = "/import", consumes = {NDJSON, "text/csv"})
+    public ImportResult importFilms(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        FilmImportService.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(TEXT_CSV)
+                ? FilmImportService.Format.CSV
+                : FilmImportService.Format.NDJSON;
+        return filmImportService.importFilms(body, format);
+    }
+
+    // Пакетная загрузка лайков из внешней системы: JSON-объект {"filmId": ..., "userId": ...} на строку
+    @PostMapping(value = "/likes/import", consumes = NDJSON)
+    public ImportResult importLikes(InputStream body) {
+        return filmImportService.importLikes(body);
+    }
+
+    // Пересчитывает денормализованные счётчики лайков по таблице like, возвращает число исправленных фильмов
+    @PostMapping("/likes/rebuild")
+    public int rebuildLikeCounts() {
+        return filmService.rebuildLikeCounts();
+    }
+
     @PutMapping("/{id}/like/{userId}")
     public Collection<Long> addLike(@PathVariable Long id, @PathVariable Long userId) {
         return filmService.addLike(id, userId);
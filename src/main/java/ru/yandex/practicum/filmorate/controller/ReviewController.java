@@ -50,8 +50,16 @@ public class ReviewController {
     public List<Review> getReviews(
             @RequestParam(value = "filmId", required = false) Long filmId,
             @RequestParam(value = "count", defaultValue = "10")
-            @Min(value = 1) int count) {
-        return reviewService.getReviewsByFilmId(filmId, count);
+            @Min(value = 1) int count,
+            @RequestParam(value = "afterUseful", required = false) Integer afterUseful,
+            @RequestParam(value = "afterId", required = false) Long afterId) {
+        return reviewService.getReviewsByFilmId(filmId, count, afterUseful, afterId);
+    }
+
+    // Пересчитывает useful по таблице review_likes, возвращает число исправленных отзывов
+    @PostMapping("/useful/rebuild")
+    public int rebuildUseful() {
+        return reviewService.rebuildUseful();
     }
 
     @PutMapping("/{id}/like/{userId}")
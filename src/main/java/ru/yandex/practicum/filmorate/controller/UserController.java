@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -10,7 +12,9 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.UserEvent;
@@ -24,6 +28,7 @@ import java.util.List;
 @RequestMapping("/users")
 public class UserController {
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/{id}")
     public User get(@PathVariable Long id) {
@@ -31,8 +36,10 @@ public class UserController {
     }
 
     @GetMapping
-    public Collection<User> getAll() {
-        return userService.getAll();
+    public ResponseEntity<StreamingResponseBody> getAll(@RequestParam(required = false) Long afterId,
+                                                        @RequestParam(required = false) Long limit,
+                                                        @RequestParam(required = false) String fields) {
+        return StreamingJson.array(objectMapper, userService.stream(afterId, limit, fields));
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
@@ -41,8 +48,11 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public Collection<User> getAllFriends(@PathVariable Long id) {
-        return userService.getAllFriends(id);
+    public Collection<User> getFriends(@PathVariable Long id,
+                                       @RequestParam(defaultValue = "0") Long offset,
+                                       @RequestParam(required = false) Long limit,
+                                       @RequestParam(defaultValue = "full") String projection) {
+        return userService.getFriends(id, offset, limit, projection);
     }
 
     @GetMapping("/{id}/recommendations")
@@ -51,8 +61,16 @@ public class UserController {
     }
 
     @GetMapping("/{id}/feed")
-    public List<UserEvent> getFeed(@PathVariable Long id) {
-        return userService.getFeed(id);
+    public List<UserEvent> getFeed(@PathVariable Long id,
+                                   @RequestParam(defaultValue = "0") Long afterEventId,
+                                   @RequestParam(required = false) Long limit) {
+        return userService.getFeed(id, afterEventId, limit);
+    }
+
+    @GetMapping("/{id}/timeline")
+    public List<UserEvent> getTimeline(@PathVariable Long id,
+                                       @RequestParam(defaultValue = "50") Integer limit) {
+        return userService.getTimeline(id, limit);
     }
 
     @PostMapping
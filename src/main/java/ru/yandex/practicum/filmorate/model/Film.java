@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.*;
 import lombok.Builder;
@@ -31,13 +32,19 @@ public class Film {
     @Min(1)
     private long duration;
 
+    // null - данные не запрошены через fields и не выводятся
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Long> likes;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Genre> genres;
     @JsonProperty("mpa")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private RatingMpa ratingMpa;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Director> directors;
 
-    public int getRate() {
-        return likes.size();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getRate() {
+        return likes == null ? null : likes.size();
     }
 }
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.Set;
+
+// Связанные данные фильма, которые клиент может запросить через параметр fields.
+// Незапрошенные данные не догружаются из БД и не попадают в ответ
+public enum FilmField {
+    LIKES,
+    GENRES,
+    MPA,
+    DIRECTORS;
+
+    // Обнуляет у уже собранного фильма незапрошенные данные, например у фильма из кэша
+    public static Film project(Film film, Set<FilmField> fields) {
+        if (!fields.contains(LIKES)) {
+            film.setLikes(null);
+        }
+        if (!fields.contains(GENRES)) {
+            film.setGenres(null);
+        }
+        if (!fields.contains(MPA)) {
+            film.setRatingMpa(null);
+        }
+        if (!fields.contains(DIRECTORS)) {
+            film.setDirectors(null);
+        }
+        return film;
+    }
+}
@@ -0,0 +1,5 @@
+package ru.yandex.practicum.filmorate.model;
+
+// Лайк пользователя фильму, элемент пакетной загрузки лайков
+public record FilmLike(Long filmId, Long userId) {
+}
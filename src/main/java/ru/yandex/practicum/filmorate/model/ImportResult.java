@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+// Итог массовой загрузки: сколько строк записано, сколько пропущено как повторы уже записанного,
+// сколько отклонено и почему. В errors попадают не больше заданного числа первых ошибок, failed считает все
+@Getter
+@Builder
+public class ImportResult {
+    private final long imported;
+    private final long skipped;
+    private final long failed;
+    private final List<RowError> errors;
+
+    // line - номер строки в теле запроса (для лайков - номер элемента массива), начиная с 1
+    public record RowError(long line, String message) {
+    }
+}
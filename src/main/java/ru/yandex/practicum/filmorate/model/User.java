@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.*;
 import lombok.Builder;
 import lombok.Data;
@@ -30,5 +31,7 @@ public class User {
     private LocalDate birthday;
 
     // Хранит в себе ID друга и статус их дружбы.
+    // В облегчённом списке друзей (projection=short) не заполняется и не попадает в ответ
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Map<Long, FriendshipStatus> friendStatusMap;
 }
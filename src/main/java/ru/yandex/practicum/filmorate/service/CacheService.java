@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStatsSource;
+
+import java.util.Comparator;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class CacheService {
+    private final List<CacheStatsSource> caches;
+
+    public List<CacheStats> getStats() {
+        return caches.stream()
+                .map(CacheStatsSource::getStats)
+                .sorted(Comparator.comparing(CacheStats::name))
+                .toList();
+    }
+}
@@ -7,7 +7,9 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
-import ru.yandex.practicum.filmorate.storage.dal.DirectorRepository;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
 
 import java.util.Collection;
 import java.util.Optional;
@@ -16,7 +18,9 @@ import java.util.Optional;
 @Service
 @RequiredArgsConstructor
 public class DirectorService {
-    private final DirectorRepository directorRepository;
+    private final DirectorStorage directorRepository;
+    private final FilmStorage filmStorage;
+    private final FilmSearchIndex searchIndex;
 
     public Director get(Long id) {
         validateDirectorExists(Optional.of(id),
@@ -34,6 +38,7 @@ public class DirectorService {
 
     public Director add(Director director) {
         director = directorRepository.add(director);
+        searchIndex.putDirector(director);
         log.info("Был добавлен режиссёр с id: {}", director.getId());
         return director;
     }
@@ -45,8 +50,11 @@ public class DirectorService {
                 new NotFoundException("Режиссёр с id: " + id + " не существует"),
                 "Попытка обновить несуществующего режиссёра с id: " + id);
 
+        director = directorRepository.update(director);
+        filmStorage.invalidateCache();
+        searchIndex.putDirector(director);
         log.info("Был обновлён режиссёр с id: {}", id);
-        return directorRepository.update(director);
+        return director;
     }
 
     public void delete(Long id) {
@@ -55,12 +63,15 @@ public class DirectorService {
                 "Попытка удалить несуществующего режиссёра с id: " + id);
 
         directorRepository.delete(id);
+        filmStorage.invalidateCache();
+        searchIndex.removeDirector(id);
         log.info("Был удалён режиссёр с id: {}", id);
     }
 
     public void deleteAll() {
-
         directorRepository.deleteAll();
+        filmStorage.invalidateCache();
+        searchIndex.clearDirectors();
         log.info("Таблица director была очищена");
     }
 
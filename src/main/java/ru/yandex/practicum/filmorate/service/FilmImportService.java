@@ -0,0 +1,465 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.BadRequestParamException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.RatingMpa;
+import ru.yandex.practicum.filmorate.model.UserEvent;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.memory.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.memory.RecommendationStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+// Массовая загрузка фильмов и лайков.
+// Фильмы загружаются из тела запроса, которое читается построчно и целиком в памяти не держится.
+// Каждая строка проверяется так же, как тело POST /films, ссылки на жанры, рейтинги и режиссёров -
+// по кэшу справочников. Корректные фильмы копятся в пачку и пишутся одной транзакцией на пачку,
+// поэтому при обрыве загрузки записанные пачки остаются в БД. Если пачка не записалась целиком
+// (например, режиссёра удалили во время загрузки), её фильмы пишутся по одному
+@Slf4j
+@Service
+public class FilmImportService {
+    // name,description,releaseDate,duration,mpa,genres,directors; жанры и режиссёры - id через ';'
+    private static final List<String> CSV_COLUMNS =
+            List.of("name", "description", "releaseDate", "duration", "mpa", "genres", "directors");
+
+    private final FilmStorage filmRepository;
+    private final UserStorage userRepository;
+    private final FeedStorage feedRepository;
+    private final GenreStorage genreStorage;
+    private final RatingMpaStorage ratingMpaStorage;
+    private final DirectorStorage directorStorage;
+    private final PopularityLeaderboard leaderboard;
+    private final FilmSearchIndex searchIndex;
+    private final LikeIndex likeIndex;
+    private final RecommendationStore recommendationStore;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+
+    public FilmImportService(FilmStorage filmRepository, UserStorage userRepository, FeedStorage feedRepository,
+                             GenreStorage genreStorage, RatingMpaStorage ratingMpaStorage,
+                             DirectorStorage directorStorage, PopularityLeaderboard leaderboard,
+                             FilmSearchIndex searchIndex, LikeIndex likeIndex, RecommendationStore recommendationStore,
+                             ObjectMapper objectMapper, Validator validator,
+                             @Value("${filmorate.import.chunk-size:1000}") int chunkSize,
+                             @Value("${filmorate.import.max-reported-errors:1000}") int maxReportedErrors) {
+        if (chunkSize < 1 || maxReportedErrors < 0) {
+            throw new IllegalArgumentException("Некорректные настройки загрузки фильмов: chunk-size=" + chunkSize
+                    + ", max-reported-errors=" + maxReportedErrors);
+        }
+        this.filmRepository = filmRepository;
+        this.userRepository = userRepository;
+        this.feedRepository = feedRepository;
+        this.genreStorage = genreStorage;
+        this.ratingMpaStorage = ratingMpaStorage;
+        this.directorStorage = directorStorage;
+        this.leaderboard = leaderboard;
+        this.searchIndex = searchIndex;
+        this.likeIndex = likeIndex;
+        this.recommendationStore = recommendationStore;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    // Лайки из внешней системы: JSON-объект {"filmId": ..., "userId": ...} на строку (application/x-ndjson).
+    // Тело читается построчно, как при загрузке фильмов, фильмы и пользователи проверяются по множествам id
+    // в памяти. Лайки копятся в пачку по chunk-size без повторов и пишутся одной транзакцией на пачку,
+    // уже поставленные лайки и повторы из прошлых пачек пропускаются базой. Если пачка не записалась целиком
+    // (например, фильм удалили во время загрузки), её лайки пишутся по одному и отклоняются только те,
+    // что не записались
+    public ImportResult importLikes(InputStream body) {
+        Import state = new Import();
+        // лайк -> номер его строки, для отчёта об ошибках
+        Map<FilmLike, Long> chunk = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    FilmLike like = parseLike(line);
+                    if (chunk.putIfAbsent(like, lineNumber) != null) {
+                        state.skipped++;
+                    }
+                } catch (RowException e) {
+                    state.reject(lineNumber, e.getMessage());
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    flushLikes(chunk, state);
+                }
+            }
+            flushLikes(chunk, state);
+        } catch (IOException e) {
+            log.info("Загрузка лайков прервана после {} записанных лайков", state.imported, e);
+            throw new BadRequestParamException("Не удалось прочитать тело запроса: " + e.getMessage());
+        } finally {
+            // загрузка задевает пересечения слишком многих пользователей, рекомендации проще пересчитать заново,
+            // один раз за загрузку, в том числе оборванную
+            if (state.imported > 0) {
+                recommendationStore.clear();
+            }
+        }
+
+        log.info("Загружено лайков: {}, пропущено повторов: {}, отклонено: {}",
+                state.imported, state.skipped, state.failed);
+        return ImportResult.builder()
+                .imported(state.imported)
+                .skipped(state.skipped)
+                .failed(state.failed)
+                .errors(state.errors)
+                .build();
+    }
+
+    private FilmLike parseLike(String line) {
+        FilmLike like;
+        try {
+            like = objectMapper.readValue(line, FilmLike.class);
+        } catch (JsonProcessingException e) {
+            throw new RowException("Некорректный JSON: " + e.getOriginalMessage());
+        }
+
+        if (like == null || like.filmId() == null || like.userId() == null) {
+            throw new RowException("Должны быть заданы filmId и userId");
+        }
+        if (!filmRepository.exists(like.filmId())) {
+            throw new RowException("Не существует фильма с id: " + like.filmId());
+        }
+        if (!userRepository.exists(like.userId())) {
+            throw new RowException("Не существует пользователь с id: " + like.userId());
+        }
+        return like;
+    }
+
+    // Записывает пачку лайков и сразу переносит новые в рейтинг, индекс лайков и ленту,
+    // чтобы память не отставала от БД, если загрузка оборвётся на следующей пачке.
+    // Уже поставленные лайки считаются пропущенными
+    private void flushLikes(Map<FilmLike, Long> chunk, Import state) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<FilmLike> added = new ArrayList<>(chunk.size());
+        int rejected = 0;
+        try {
+            added.addAll(filmRepository.addLikes(chunk.keySet()));
+        } catch (DataAccessException e) {
+            log.warn("Не удалось записать пачку из {} лайков, пишем по одному", chunk.size(), e);
+            for (Map.Entry<FilmLike, Long> like : chunk.entrySet()) {
+                try {
+                    added.addAll(filmRepository.addLikes(List.of(like.getKey())));
+                } catch (DataAccessException ex) {
+                    rejected++;
+                    state.reject(like.getValue(), "Не удалось записать лайк: "
+                            + ex.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        state.imported += added.size();
+        state.skipped += chunk.size() - added.size() - rejected;
+        chunk.clear();
+        if (added.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Long> deltas = new HashMap<>();
+        List<UserEvent> events = new ArrayList<>(added.size());
+        long timestamp = System.currentTimeMillis();
+        for (FilmLike like : added) {
+            deltas.merge(like.filmId(), 1L, Long::sum);
+            events.add(UserEvent.builder()
+                    .userId(like.userId())
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .entityId(like.filmId())
+                    .timestamp(timestamp)
+                    .build());
+        }
+
+        leaderboard.addLikes(deltas);
+        likeIndex.addLikes(added);
+        feedRepository.addEventsToFeed(events);
+    }
+
+    public ImportResult importFilms(InputStream body, Format format) {
+        Import state = new Import();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && !state.headerRead) {
+                    validateCsvHeader(line);
+                    state.headerRead = true;
+                    continue;
+                }
+
+                try {
+                    Film film = format == Format.CSV ? parseCsv(line) : parseJson(line);
+                    validate(film);
+                    state.chunk.add(film);
+                    state.chunkLines.add(lineNumber);
+                } catch (RowException e) {
+                    state.reject(lineNumber, e.getMessage());
+                }
+
+                if (state.chunk.size() >= chunkSize) {
+                    flush(state);
+                }
+            }
+        } catch (IOException e) {
+            log.info("Загрузка фильмов прервана после {} записанных фильмов", state.imported, e);
+            throw new BadRequestParamException("Не удалось прочитать тело запроса: " + e.getMessage());
+        }
+        flush(state);
+
+        log.info("Загружено фильмов: {}, отклонено строк: {}", state.imported, state.failed);
+        return ImportResult.builder()
+                .imported(state.imported)
+                .failed(state.failed)
+                .errors(state.errors)
+                .build();
+    }
+
+    private void flush(Import state) {
+        if (state.chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            index(filmRepository.addAll(state.chunk));
+            state.imported += state.chunk.size();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось записать пачку из {} фильмов, пишем по одному", state.chunk.size(), e);
+            for (int i = 0; i < state.chunk.size(); i++) {
+                try {
+                    index(filmRepository.addAll(List.of(state.chunk.get(i))));
+                    state.imported++;
+                } catch (DataAccessException ex) {
+                    state.reject(state.chunkLines.get(i), "Не удалось записать фильм: "
+                            + ex.getMostSpecificCause().getMessage());
+                }
+            }
+        } finally {
+            state.chunk.clear();
+            state.chunkLines.clear();
+        }
+    }
+
+    private void index(List<Film> films) {
+        for (Film film : films) {
+            leaderboard.put(film);
+            searchIndex.put(film);
+        }
+    }
+
+    private Film parseJson(String line) {
+        try {
+            return objectMapper.readValue(line, Film.class);
+        } catch (JsonProcessingException e) {
+            throw new RowException("Некорректный JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private static void validateCsvHeader(String line) {
+        List<String> header = splitCsv(line).stream().map(String::trim).toList();
+        if (!header.equals(CSV_COLUMNS)) {
+            log.info("Попытка загрузить CSV с некорректным заголовком: {}", line);
+            throw new BadRequestParamException("Первая строка CSV должна быть заголовком: "
+                    + String.join(",", CSV_COLUMNS));
+        }
+    }
+
+    private static Film parseCsv(String line) {
+        List<String> values = splitCsv(line);
+        if (values.size() != CSV_COLUMNS.size()) {
+            throw new RowException("Ожидалось столбцов: " + CSV_COLUMNS.size() + ", получено: " + values.size());
+        }
+
+        try {
+            String mpa = values.get(4).trim();
+            return Film.builder()
+                    .name(values.get(0))
+                    .description(values.get(1))
+                    .releaseDate(values.get(2).isBlank() ? null : LocalDate.parse(values.get(2).trim()))
+                    .duration(Long.parseLong(values.get(3).trim()))
+                    .ratingMpa(mpa.isEmpty() ? null : RatingMpa.builder().id(Long.parseLong(mpa)).build())
+                    .genres(parseIds(values.get(5)).stream()
+                            .map(id -> Genre.builder().id(id).build())
+                            .collect(Collectors.toSet()))
+                    .directors(parseIds(values.get(6)).stream()
+                            .map(id -> Director.builder().id(id).build())
+                            .collect(Collectors.toSet()))
+                    .build();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new RowException("Некорректное значение: " + e.getMessage());
+        }
+    }
+
+    private static Set<Long> parseIds(String value) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (String id : value.split(";")) {
+            if (!id.isBlank()) {
+                ids.add(Long.parseLong(id.trim()));
+            }
+        }
+        return ids;
+    }
+
+    // Поля через запятую; поле в двойных кавычках может содержать запятые, кавычка внутри него удваивается.
+    // Перевод строки внутри поля не поддерживается: одна строка тела - один фильм
+    private static List<String> splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    // Те же проверки, что у POST /films. Ссылки заменяются записями справочников,
+    // чтобы рейтинг и поиск получили фильм с названиями жанров и режиссёров
+    private void validate(Film film) {
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            throw new RowException(violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+        if (film.getLikes() != null && !film.getLikes().isEmpty()) {
+            throw new RowException("Новый фильм не может содержать лайки");
+        }
+        film.setLikes(new LinkedHashSet<>());
+
+        Set<Genre> genres = new TreeSet<>(Comparator.comparing(Genre::getId));
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                Genre found = genre.getId() == null ? null : genreStorage.get(genre.getId());
+                if (found == null) {
+                    throw new RowException("Не найден жанр с id: " + genre.getId());
+                }
+                genres.add(found);
+            }
+        }
+        film.setGenres(new LinkedHashSet<>(genres));
+
+        Set<Director> directors = new HashSet<>();
+        if (film.getDirectors() != null) {
+            for (Director director : film.getDirectors()) {
+                Director found = director.getId() == null ? null : directorStorage.get(director.getId());
+                if (found == null) {
+                    throw new RowException("Не найден режиссёр с id: " + director.getId());
+                }
+                directors.add(found);
+            }
+        }
+        film.setDirectors(directors);
+
+        if (film.getRatingMpa() != null) {
+            RatingMpa rating = film.getRatingMpa().getId() == null
+                    ? null
+                    : ratingMpaStorage.get(film.getRatingMpa().getId());
+            if (rating == null) {
+                throw new RowException("Не найден рейтинг с id: " + film.getRatingMpa().getId());
+            }
+            film.setRatingMpa(rating);
+        }
+    }
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    // Ошибка одной строки: строка отклоняется, загрузка продолжается
+    private static class RowException extends RuntimeException {
+        private RowException(String message) {
+            super(message);
+        }
+    }
+
+    private class Import {
+        private final List<Film> chunk = new ArrayList<>(chunkSize);
+        private final List<Long> chunkLines = new ArrayList<>(chunkSize);
+        private final List<ImportResult.RowError> errors = new ArrayList<>();
+        private boolean headerRead = false;
+        private long imported = 0;
+        private long skipped = 0;
+        private long failed = 0;
+
+        private void reject(long line, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new ImportResult.RowError(line, message));
+            }
+        }
+    }
+}
@@ -2,34 +2,68 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.BadRequestParamException;
 import ru.yandex.practicum.filmorate.exception.ConflictException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
-import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
 import ru.yandex.practicum.filmorate.model.Operation;
-import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 import ru.yandex.practicum.filmorate.storage.dal.FilmRepository;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.memory.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.memory.RecommendationStore;
 
 import java.time.Year;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FilmService {
-    private final FilmRepository filmRepository;
+    private final FilmStorage filmRepository;
     private final UserService userService;
     private final GenreService genreService;
     private final DirectorService directorService;
     private final FeedStorage feedRepository;
+    private final ReviewStorage reviewRepository;
+    private final PopularityLeaderboard leaderboard;
+    private final LikeIndex likeIndex;
+    private final RecommendationStore recommendationStore;
+    private final FilmSearchIndex searchIndex;
+
+    @Value("${filmorate.films.rebuild-like-count-on-startup:true}")
+    private boolean rebuildLikeCountOnStartup;
+
+    // Данные могут попасть в БД в обход репозитория (SQL-скрипты, старая схема без like_count),
+    // поэтому при старте счётчики лайков сверяются с таблицей like
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (rebuildLikeCountOnStartup) {
+            rebuildLikeCounts();
+        }
+
+        // рейтинг в памяти прогревается после пересчёта счётчиков, так как строится по like_count
+        leaderboard.rebuild();
+        likeIndex.rebuild();
+        recommendationStore.clear();
+        searchIndex.rebuild();
+    }
 
     public Film get(Long id) {
         validateFilmExists(Optional.of(id),
@@ -47,35 +81,83 @@ public class FilmService {
         return filmRepository.getAll();
     }
 
+    // Параметры проверяются сразу, а фильмы читаются уже при записи ответа
+    public Consumer<Consumer<Film>> stream(Long afterId, Long limit, String fields) {
+        validatePageLimit(limit);
+        Set<FilmField> projection = parseFields(fields);
+        long after = afterId != null ? afterId : 0;
+        return consumer -> {
+            log.info("Получен потоком список фильмов с id больше {}", after);
+            filmRepository.stream(after, limit, projection, consumer);
+        };
+    }
+
     public Collection<Film> getPopular(Long limit, Long genreId, Year year) {
         validateFilmExists(Optional.empty(),
                 new NotFoundException("Таблица film пуста"),
                 "Попытка получить данные из таблицы film, которая пуста");
 
+        if (limit != null && limit <= 0) {
+            log.info("Попытка получить список популярных фильмов с некорректным count: {}", limit);
+            throw new BadRequestParamException("Параметр count должен быть положительным");
+        }
+
         if (genreId != null) {
             genreService.get(genreId);
         }
 
-        Collection<Film> result = filmRepository.getPopular(limit, genreId, year);
+        Collection<Film> result;
+        if (leaderboard.isReady()) {
+            long count = limit != null ? limit : FilmRepository.DEFAULT_POPULAR_COUNT;
+            result = filmRepository.getByIds(leaderboard.getTop(count, genreId, year));
+        } else {
+            result = filmRepository.getPopular(limit, genreId, year);
+        }
+
         if (limit == null) log.info("Получен список наиболее популярных фильмов");
         else log.info("Получен список из {} наиболее популярных фильмов", limit);
         return result;
     }
 
     public List<Film> getCommonFilms(long userId, long friendId) {
-        userService.get(userId);
-        userService.get(friendId);
+        userService.validateUserExists(userId);
+        userService.validateUserExists(friendId);
         return filmRepository.getCommonFilms(userId, friendId);
     }
 
-    public Collection<Film> getByDirector(Long directorId, String sortBy) {
-        Director director = directorService.get(directorId);
+    // Курсор afterId - id последнего фильма предыдущей страницы, его место в сортировке определяется в БД
+    public Collection<Film> getByDirector(Long directorId, String sortBy, Long afterId, Long limit, String fields) {
+        directorService.get(directorId);
+        validatePageLimit(limit);
+        Set<FilmField> projection = parseFields(fields);
+        if (afterId != null && !filmRepository.exists(afterId)) {
+            log.info("Попытка получить страницу фильмов режиссёра после несуществующего фильма с id: {}", afterId);
+            throw new BadRequestParamException("Не существует фильма с id: " + afterId);
+        }
+
         log.info("Был получен список фильмов у режиссёра с id: {}", directorId);
-        return filmRepository.getByDirector(directorId, sortBy);
+        return filmRepository.getByDirector(directorId, sortBy, afterId,
+                limit != null ? limit : Long.MAX_VALUE, projection);
     }
 
-    public Collection<Film> search(String query, String by) {
-        return filmRepository.search(query, by);
+    // Курсор afterId - id последнего фильма предыдущей страницы. Следующая страница начинается
+    // после его места в рейтинге (лайки, id), сам курсор может уже не подходить под запрос
+    public Collection<Film> search(String query, String by, Long afterId, Long limit, String fields) {
+        validatePageLimit(limit);
+        Set<FilmField> projection = parseFields(fields);
+        if (afterId != null && !filmRepository.exists(afterId)) {
+            log.info("Попытка получить страницу результатов поиска после несуществующего фильма с id: {}", afterId);
+            throw new BadRequestParamException("Не существует фильма с id: " + afterId);
+        }
+
+        if (searchIndex.isReady() && leaderboard.isReady()) {
+            Set<Long> filmIds = searchIndex.search(query, by.contains("title"), by.contains("director"));
+            List<Long> page = leaderboard.rank(filmIds, afterId, limit != null ? limit : Long.MAX_VALUE);
+            return filmRepository.getByIds(page, projection);
+        }
+
+        // индексы ещё не прогреты - ищем по БД, страница отсчитывается от курсора так же, по (like_count, id)
+        return filmRepository.search(query, by, afterId, limit, projection);
     }
 
     public Film add(Film film) {
@@ -97,21 +179,29 @@ public class FilmService {
         }
 
         film = filmRepository.add(film);
+        leaderboard.put(film);
+        searchIndex.put(film);
         log.info("Был добавлен фильм с id: {}", film.getId());
         return film;
     }
 
     public Set<Long> addLike(Long filmId, Long userId) {
         Film film = get(filmId);
-        User user = userService.get(userId);
-        Set<Long> likes = filmRepository.addLike(filmId, userId);
+        userService.validateUserExists(userId);
+        // в рейтинг идёт прирост, а не прочитанное число лайков: приросты от одновременных лайков
+        // складываются в любом порядке, а прочитанные значения могли бы записаться в обратном
+        if (filmRepository.addLike(filmId, userId)) {
+            leaderboard.addLikes(Map.of(filmId, 1L));
+        }
+        likeIndex.addLike(userId, filmId);
+        recommendationStore.invalidateLike(userId, filmId);
 
         log.info("Фильму с id: {} был поставлен лайк от пользователя с id: {}", filmId, userId);
 
         feedRepository.addEventToFeed(userId, EventType.LIKE, Operation.ADD, filmId);
         log.info("Событие добавлено в ленту: пользователь с id: {} лайкнул фильм с id: {}", userId, filmId);
 
-        return likes;
+        return filmRepository.get(filmId).getLikes();
     }
 
     public Film update(Film film) {
@@ -134,6 +224,10 @@ public class FilmService {
         }
 
         film = filmRepository.update(film);
+        leaderboard.put(film);
+        searchIndex.put(film);
+        likeIndex.setFilmLikes(id, film.getLikes());
+        recommendationStore.clear();
         log.info("Был обновлён фильм с id: {}", id);
         return film;
     }
@@ -151,20 +245,43 @@ public class FilmService {
 
 
         filmRepository.delete(id);
+        leaderboard.remove(id);
+        likeIndex.removeFilm(id);
+        searchIndex.removeFilm(id);
+        recommendationStore.clear();
+        // отзывы к фильму удалены каскадно
+        reviewRepository.reloadIds();
         log.info("Был удалён фильм с id: {}", id);
     }
 
     public void deleteAll() {
         filmRepository.deleteAll();
+        leaderboard.clear();
+        likeIndex.clear();
+        searchIndex.clearFilms();
+        recommendationStore.clear();
+        reviewRepository.reloadIds();
         log.info("Таблица film была очищена");
     }
 
+    public int rebuildLikeCounts() {
+        int repaired = filmRepository.rebuildLikeCounts();
+        if (repaired > 0 && leaderboard.isReady()) {
+            leaderboard.rebuild();
+        }
+        log.info("Счётчики лайков пересчитаны, исправлено фильмов: {}", repaired);
+        return repaired;
+    }
+
     public void deleteLike(Long filmId, Long userId) {
         Film film = get(filmId);
-        User user = userService.get(userId);
+        userService.validateUserExists(userId);
 
         if (film.getLikes().contains(userId)) {
             filmRepository.deleteLike(filmId, userId);
+            leaderboard.addLikes(Map.of(filmId, -1L));
+            likeIndex.removeLike(userId, filmId);
+            recommendationStore.invalidateLike(userId, filmId);
             log.info("У фильма с id: {} был удалён лайк от пользователя с id: {}",
                     filmId, userId);
 
@@ -177,24 +294,38 @@ public class FilmService {
         }
     }
 
+    // null - все связанные данные, пустая строка - только поля самого фильма
+    private static Set<FilmField> parseFields(String fields) {
+        if (fields == null) {
+            return EnumSet.allOf(FilmField.class);
+        }
+
+        Set<FilmField> result = EnumSet.noneOf(FilmField.class);
+        for (String field : fields.split(",")) {
+            if (field.isBlank()) {
+                continue;
+            }
+            try {
+                result.add(FilmField.valueOf(field.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                log.info("Попытка получить фильмы с неподдерживаемым значением fields: {}", fields);
+                throw new BadRequestParamException("Параметр fields может содержать значения: "
+                        + "likes, genres, mpa, directors через запятую");
+            }
+        }
+        return result;
+    }
+
+    private static void validatePageLimit(Long limit) {
+        if (limit != null && limit <= 0) {
+            log.info("Попытка получить страницу фильмов с некорректным limit: {}", limit);
+            throw new BadRequestParamException("Параметр limit должен быть положительным");
+        }
+    }
+
     private void validateFilmExists(Optional<Long> id,
                                     RuntimeException e, String logMessage) {
-        try {
-            if (id.isPresent()) {
-                Optional<Film> result = Optional.ofNullable(filmRepository.get(id.get()));
-                if (result.isEmpty()) {
-                    log.info(logMessage);
-                    throw e;
-                }
-            }
-//            else {
-//                Optional<Collection<Film>> result = Optional.ofNullable(filmRepository.getAll());
-//                if (result.isPresent() && result.get().isEmpty()) {
-//                    log.info(logMessage);
-//                    throw e;
-//                }
-//            }
-        } catch (EmptyResultDataAccessException ex) {
+        if (id.isPresent() && !filmRepository.exists(id.get())) {
             log.info(logMessage);
             throw e;
         }
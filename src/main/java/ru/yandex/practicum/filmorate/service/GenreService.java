@@ -6,7 +6,8 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.storage.dal.GenreRepository;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
 
 import java.util.Collection;
 import java.util.Optional;
@@ -15,7 +16,9 @@ import java.util.Optional;
 @Service
 @RequiredArgsConstructor
 public class GenreService {
-    private final GenreRepository genreRepository;
+    private final GenreStorage genreRepository;
+    // фильмы в кэше содержат названия из справочника, поэтому при его изменении их нужно сбросить
+    private final FilmStorage filmStorage;
 
     public Genre get(Long id) {
         validateGenreExists(Optional.of(id),
@@ -45,6 +48,7 @@ public class GenreService {
                 "Попытка обновить несуществующий жанр с id: " + id);
 
         genre = genreRepository.update(genre);
+        filmStorage.invalidateCache();
         log.info("Был обновлён жанр с id: {}", id);
         return genre;
     }
@@ -55,11 +59,13 @@ public class GenreService {
                 "Попытка удалить несуществующий жанр с id: " + id);
 
         genreRepository.delete(id);
+        filmStorage.invalidateCache();
         log.info("Был удалён жанр с id: {}", id);
     }
 
     public void deleteAll() {
         genreRepository.deleteAll();
+        filmStorage.invalidateCache();
         log.info("Таблица genre была очищена");
     }
 
@@ -6,7 +6,8 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.RatingMpa;
-import ru.yandex.practicum.filmorate.storage.dal.RatingMpaRepository;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
 
 import java.util.Collection;
 import java.util.Optional;
@@ -15,7 +16,8 @@ import java.util.Optional;
 @Service
 @RequiredArgsConstructor
 public class RatingMpaService {
-    private final RatingMpaRepository ratingMpaRepository;
+    private final RatingMpaStorage ratingMpaRepository;
+    private final FilmStorage filmStorage;
 
     public RatingMpa get(Long id) {
         validateRatingExists(Optional.of(id),
@@ -45,6 +47,7 @@ public class RatingMpaService {
                 "Попытка обновить несуществующий рейтинг с id: " + id);
 
         rating = ratingMpaRepository.update(rating);
+        filmStorage.invalidateCache();
         log.info("Был обновлён рейтинг с id: {}", id);
         return rating;
     }
@@ -55,11 +58,13 @@ public class RatingMpaService {
                 "Попытка удалить несуществующий рейтинг с id: " + id);
 
         ratingMpaRepository.delete(id);
+        filmStorage.invalidateCache();
         log.info("Был удалён рейтинг с id: {}", id);
     }
 
     public void deleteAll() {
         ratingMpaRepository.deleteAll();
+        filmStorage.invalidateCache();
         log.info("Таблица rating была очищена");
     }
 
@@ -14,7 +14,7 @@ public interface ReviewService {
 
     Review getReviewById(Long reviewId);
 
-    List<Review> getReviewsByFilmId(Long filmId, int count);
+    List<Review> getReviewsByFilmId(Long filmId, int count, Integer afterUseful, Long afterId);
 
     Review addLike(Long reviewId, Long userId);
 
@@ -23,4 +23,6 @@ public interface ReviewService {
     Review deleteLike(Long reviewId, Long userId);
 
     Review deleteDislike(Long reviewId, Long userId);
+
+    int rebuildUseful();
 }
\ No newline at end of file
@@ -3,9 +3,9 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.BadRequestParamException;
 import ru.yandex.practicum.filmorate.exception.ConflictException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.EventType;
@@ -16,9 +16,7 @@ import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 
 @Slf4j
 @Service
@@ -40,20 +38,19 @@ public class ReviewServiceImpl implements ReviewService {
     }
 
     @Override
-    public List<Review> getReviewsByFilmId(Long filmId, int count) {
-        if (filmId != null && filmStorage.get(filmId) == null) {
+    public List<Review> getReviewsByFilmId(Long filmId, int count, Integer afterUseful, Long afterId) {
+        if (filmId != null && !filmStorage.exists(filmId)) {
             log.warn("Отзыв с id {} не найден", filmId);
             throw new NotFoundException("Отзыв с id " + filmId + " не найден");
         }
 
-        List<Review> all = (filmId == null)
-                ? reviewStorage.getAll()
-                : reviewStorage.getByFilmId(filmId);
+        if ((afterUseful == null) != (afterId == null)) {
+            log.info("Попытка получить страницу отзывов с неполной позицией: afterUseful={}, afterId={}",
+                    afterUseful, afterId);
+            throw new BadRequestParamException("Параметры afterUseful и afterId задаются только вместе");
+        }
 
-        return all.stream()
-                .sorted(Comparator.comparingInt(Review::getUseful).reversed())
-                .limit(count)
-                .toList();
+        return reviewStorage.getTop(filmId, count, afterUseful, afterId);
     }
 
     @Override
@@ -80,7 +77,6 @@ public class ReviewServiceImpl implements ReviewService {
 
         existing.setContent(review.getContent());
         existing.setIsPositive(review.getIsPositive());
-        existing.setUseful(reviewStorage.countLikes(id) - reviewStorage.countDislikes(id));
 
         Review updated = reviewStorage.update(existing);
         log.info("Обновлён отзыв с id {}", id);
@@ -92,16 +88,6 @@ public class ReviewServiceImpl implements ReviewService {
         return updated;
     }
 
-    private Review updateUsefulAndGetReview(Long reviewId) {
-        Review review = getReviewById(reviewId);
-        int likes = reviewStorage.countLikes(reviewId);
-        int dislikes = reviewStorage.countDislikes(reviewId);
-        review.setUseful(likes - dislikes);
-        Review updated = reviewStorage.update(review);
-        log.debug("Полезность отзыва {} обновлена: {}", reviewId, review.getUseful());
-        return updated;
-    }
-
     @Override
     @Transactional
     public void deleteReview(Long reviewId) {
@@ -121,19 +107,15 @@ public class ReviewServiceImpl implements ReviewService {
     @Transactional
     public Review addLike(Long reviewId, Long userId) {
         validateReviewAndUser(reviewId, userId);
-        if (reviewStorage.hasLike(reviewId, userId)) {
-            log.debug("Лайк уже существует для отзыва {} от пользователя {}", reviewId, userId);
-            return getReviewById(reviewId);
-        }
-        if (reviewStorage.hasDislike(reviewId, userId)) {
-            reviewStorage.deleteDislike(reviewId, userId);
-            log.debug("Удалён дизлайк для отзыва {} от пользователя {}", reviewId, userId);
-            return getReviewById(reviewId);
+
+        try {
+            reviewStorage.vote(reviewId, userId, true);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Пользователь {} уже оценил отзыв {}", userId, reviewId, e);
+            throw new ConflictException("Пользователь уже оценил этот отзыв");
         }
-        reviewStorage.addLike(reviewId, userId);
         log.info("Добавлен лайк для отзыва {} от пользователя {}", reviewId, userId);
-
-        return updateUsefulAndGetReview(reviewId);
+        return reviewStorage.get(reviewId);
     }
 
     @Override
@@ -142,22 +124,13 @@ public class ReviewServiceImpl implements ReviewService {
         validateReviewAndUser(reviewId, userId);
 
         try {
-            if (reviewStorage.hasDislike(reviewId, userId)) {
-                log.debug("Дизлайк уже существует для отзыва {} от пользователя {}", reviewId, userId);
-                return getReviewById(reviewId);
-            }
-            if (reviewStorage.hasLike(reviewId, userId)) {
-                reviewStorage.deleteLike(reviewId, userId);
-                log.debug("Удалён лайк для отзыва {} от пользователя {}", reviewId, userId);
-            }
-            reviewStorage.addDislike(reviewId, userId);
-            log.info("Добавлен дизлайк для отзыва {} от пользователя {}", reviewId, userId);
-            return updateUsefulAndGetReview(reviewId);
-
+            reviewStorage.vote(reviewId, userId, false);
         } catch (DataIntegrityViolationException e) {
             log.warn("Пользователь {} уже оценил отзыв {}", userId, reviewId, e);
             throw new ConflictException("Пользователь уже оценил этот отзыв");
         }
+        log.info("Добавлен дизлайк для отзыва {} от пользователя {}", reviewId, userId);
+        return reviewStorage.get(reviewId);
     }
 
     @Override
@@ -165,16 +138,16 @@ public class ReviewServiceImpl implements ReviewService {
     public Review deleteLike(Long reviewId, Long userId) {
         validateReviewAndUser(reviewId, userId);
 
-        if (reviewStorage.hasLike(reviewId, userId)) {
-            reviewStorage.deleteLike(reviewId, userId);
+        if (reviewStorage.deleteVote(reviewId, userId, true)) {
             log.info("Удалён лайк для отзыва {} от пользователя {}", reviewId, userId);
 
             feedRepository.addEventToFeed(userId, EventType.LIKE, Operation.REMOVE, reviewId);
             log.info("Событие добавлено в ленту: пользователь с id: {} удалил лайк с отзыва с id: {}",
                     userId, reviewId);
+        } else {
+            log.debug("Лайк не найден для отзыва {} от пользователя {}", reviewId, userId);
         }
-        log.debug("Лайк не найден для отзыва {} от пользователя {}", reviewId, userId);
-        return updateUsefulAndGetReview(reviewId);
+        return reviewStorage.get(reviewId);
     }
 
     @Override
@@ -182,23 +155,24 @@ public class ReviewServiceImpl implements ReviewService {
     public Review deleteDislike(Long reviewId, Long userId) {
         validateReviewAndUser(reviewId, userId);
 
-        if (reviewStorage.hasDislike(reviewId, userId)) {
-            reviewStorage.deleteDislike(reviewId, userId);
+        if (reviewStorage.deleteVote(reviewId, userId, false)) {
             log.info("Удалён дизлайк для отзыва {} от пользователя {}", reviewId, userId);
+        } else {
+            log.debug("Дизлайк не найден для отзыва {} от пользователя {}", reviewId, userId);
         }
-        log.debug("Дизлайк не найден для отзыва {} от пользователя {}", reviewId, userId);
-        return updateUsefulAndGetReview(reviewId);
+        return reviewStorage.get(reviewId);
+    }
+
+    @Override
+    public int rebuildUseful() {
+        int repaired = reviewStorage.rebuildUseful();
+        log.info("Полезность отзывов пересчитана, исправлено отзывов: {}", repaired);
+        return repaired;
     }
 
     private void validateReviewExists(Long id,
                                     RuntimeException e, String logMessage) {
-        try {
-                Optional<Review> result = Optional.ofNullable(reviewStorage.get(id));
-                if (result.isEmpty()) {
-                    log.info(logMessage);
-                    throw e;
-                }
-            } catch (EmptyResultDataAccessException ex) {
+        if (!reviewStorage.exists(id)) {
             log.info(logMessage);
             throw e;
         }
@@ -208,18 +182,18 @@ public class ReviewServiceImpl implements ReviewService {
         validateReviewExists(reviewId,
                 new NotFoundException("Не существует отзыва с id: " + reviewId),
                 "Попытка получить несуществующий отзыв с id: " + reviewId);
-        if (userStorage.get(userId) == null) {
+        if (!userStorage.exists(userId)) {
             log.warn("Пользователь {} не найден", userId);
             throw new NotFoundException("Пользователь с id " + userId + " не найден");
         }
     }
 
     private void validateUserAndFilm(Long userId, Long filmId) {
-        if (userStorage.get(userId) == null) {
+        if (!userStorage.exists(userId)) {
             log.warn("Пользователь {} не найден", userId);
             throw new NotFoundException("Пользователь с id " + userId + " не найден");
         }
-        if (filmStorage.get(filmId) == null) {
+        if (!filmStorage.exists(filmId)) {
             log.warn("Фильм {} не найден", filmId);
             throw new NotFoundException("Фильм с id " + filmId + " не найден");
         }
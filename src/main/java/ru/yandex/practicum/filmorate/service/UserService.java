@@ -2,8 +2,11 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.BadRequestParamException;
 import ru.yandex.practicum.filmorate.exception.ConflictException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.EventType;
@@ -13,9 +16,15 @@ import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.UserEvent;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
-import ru.yandex.practicum.filmorate.storage.dal.FilmRepository;
-import ru.yandex.practicum.filmorate.storage.dal.UserRepository;
-
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.memory.FriendTimelineStore;
+import ru.yandex.practicum.filmorate.storage.memory.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.memory.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.memory.RecommendationStore;
+
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -24,14 +33,25 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserService {
-    private final UserRepository userRepository;
-    private final FilmRepository filmRepository;
+    private final UserStorage userRepository;
+    private final FilmStorage filmRepository;
     private final FeedStorage feedRepository;
+    private final ReviewStorage reviewRepository;
+    private final PopularityLeaderboard leaderboard;
+    private final LikeIndex likeIndex;
+    private final RecommendationStore recommendationStore;
+    private final FriendTimelineStore timelineStore;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        timelineStore.rebuild();
+    }
 
     public User get(Long id) {
         validateUserExists(Optional.of(id),
@@ -47,6 +67,26 @@ public class UserService {
         return userRepository.getAll();
     }
 
+    // fields: null или friends - с картой друзей, пустая строка - без неё.
+    // Параметры проверяются сразу, а пользователи читаются уже при записи ответа
+    public Consumer<Consumer<User>> stream(Long afterId, Long limit, String fields) {
+        if (limit != null && limit <= 0) {
+            log.info("Попытка получить страницу пользователей с некорректным limit: {}", limit);
+            throw new BadRequestParamException("Параметр limit должен быть положительным");
+        }
+        if (fields != null && !fields.isBlank() && !fields.trim().equals("friends")) {
+            log.info("Попытка получить пользователей с неподдерживаемым значением fields: {}", fields);
+            throw new BadRequestParamException("Параметр fields может принимать только значение friends");
+        }
+
+        boolean withFriendMaps = fields == null || !fields.isBlank();
+        long after = afterId != null ? afterId : 0;
+        return consumer -> {
+            log.info("Получен потоком список пользователей с id больше {}", after);
+            userRepository.stream(after, limit, withFriendMaps, consumer);
+        };
+    }
+
     public Collection<User> getCommonFriends(Long id, Long otherId) {
         validateUserExists(Optional.of(id),
                 new NotFoundException("Не существует пользователь с id: " + id),
@@ -66,6 +106,12 @@ public class UserService {
                 new NotFoundException("Не существует пользователь с id: " + id),
                 "Попытка получить несуществующего пользователя с id: " + id);
 
+        if (likeIndex.isReady()) {
+            log.info("Получен список рекомендаций из индекса лайков с id: {}", id);
+            return filmRepository.getByIds(Arrays.stream(recommendationStore.get(id)).boxed().toList());
+        }
+
+        // индекс ещё не прогрет - считаем по БД
         Map<Long, Set<Long>> similarUserLikes = userRepository.getSimilarUserLikes(id);
         Set<Long> userLikes = similarUserLikes.get(id);
         if (userLikes == null) {
@@ -86,12 +132,39 @@ public class UserService {
         return filmRepository.getByListIds(recommendations);
     }
 
-    public List<UserEvent> getFeed(Long id) {
+    // afterEventId - id последнего уже полученного события: с limit это постраничный обход ленты,
+    // без limit - только новые события с прошлого опроса
+    public List<UserEvent> getFeed(Long id, Long afterEventId, Long limit) {
+        if (afterEventId < 0) {
+            log.info("Попытка получить ленту событий с отрицательным afterEventId: {}", afterEventId);
+            throw new BadRequestParamException("Параметр afterEventId не может быть отрицательным");
+        }
+
+        if (limit != null && limit <= 0) {
+            log.info("Попытка получить ленту событий с неположительным limit: {}", limit);
+            throw new BadRequestParamException("Параметр limit должен быть положительным");
+        }
+
         validateUserExists(Optional.of(id), new NotFoundException("Не существует пользователь с id: " + id),
-                "Попытка удалить несуществующего пользователя с id: " + id);
+                "Попытка получить ленту событий несуществующего пользователя с id: " + id);
+
+        log.info("Получена лента событий пользователя с id: {}, afterEventId: {}, limit: {}", id, afterEventId, limit);
+        return feedRepository.getFeed(id, afterEventId, limit);
+    }
+
+    // Лента событий друзей от новых к старым. Свежие события друзей могут появиться в ней с задержкой
+    // записи буфера ленты
+    public List<UserEvent> getTimeline(Long id, Integer limit) {
+        if (limit <= 0) {
+            log.info("Попытка получить ленту друзей с неположительным limit: {}", limit);
+            throw new BadRequestParamException("Параметр limit должен быть положительным");
+        }
 
-        log.info("Получена лента событий пользователя с id: {}", id);
-        return feedRepository.getFeed(id);
+        validateUserExists(Optional.of(id), new NotFoundException("Не существует пользователь с id: " + id),
+                "Попытка получить ленту друзей несуществующего пользователя с id: " + id);
+
+        log.info("Получена лента друзей пользователя с id: {}, limit: {}", id, limit);
+        return timelineStore.get(id, limit);
     }
 
 
@@ -128,13 +201,33 @@ public class UserService {
         return userRepository.getFriendshipStatus(id, otherId);
     }
 
-    public Collection<User> getAllFriends(Long id) {
+    public Collection<User> getFriends(Long id, Long offset, Long limit, String projection) {
+        if (offset < 0) {
+            log.info("Попытка получить список друзей с отрицательным offset: {}", offset);
+            throw new BadRequestParamException("Параметр offset не может быть отрицательным");
+        }
+
+        if (limit != null && limit <= 0) {
+            log.info("Попытка получить список друзей с неположительным limit: {}", limit);
+            throw new BadRequestParamException("Параметр limit должен быть положительным");
+        }
+
+        boolean withFriendMaps = switch (projection) {
+            case "full" -> true;
+            case "short" -> false;
+            default -> {
+                log.info("Попытка получить список друзей с неподдерживаемым projection: {}", projection);
+                throw new BadRequestParamException("Параметр projection может принимать значения: full, short");
+            }
+        };
+
         validateUserExists(Optional.of(id),
                 new NotFoundException("Не существует пользователь с id: " + id),
                 "Попытка получить список друзей, но не существует пользователь с id:  " + id);
 
-        log.info("Получен список друзей пользователя с id: {}", id);
-        return userRepository.getAllFriends(id);
+        log.info("Получен список друзей пользователя с id: {}, offset: {}, limit: {}, projection: {}",
+                id, offset, limit, projection);
+        return userRepository.getFriends(id, offset, limit, withFriendMaps);
     }
 
     public User add(User user) {
@@ -173,7 +266,7 @@ public class UserService {
             throw new ConflictException("Невозможно добавить самого себя в друзья");
         }
 
-        if (userRepository.getAllFriends(id).contains(userRepository.get(friendId))) {
+        if (userRepository.get(id).getFriendStatusMap().containsKey(friendId)) {
             log.info("Попытка добавить в друзья пользователя, который уже находится в друзьях");
             throw new ConflictException("Пользователь с id: " + friendId + " уже находится в друзьях");
         }
@@ -196,6 +289,7 @@ public class UserService {
             log.info("В таблице friend была добавлена запись с id: {} и id: {}, со статусом: {}", id, friendId, status);
             userRepository.addFriend(id, friendId, status);
         }
+        timelineStore.addFriend(id, friendId);
 
         feedRepository.addEventToFeed(id, EventType.FRIEND, Operation.ADD, friendId);
         log.info("Событие добавлено в ленту: пользовател с id: {} добавил друга с id: {}", id, friendId);
@@ -215,6 +309,7 @@ public class UserService {
         }
 
         user = userRepository.update(user);
+        timelineStore.reloadFriends(id);
         log.info("Был обновлён пользователь с id: {}", id);
         return user;
     }
@@ -230,6 +325,25 @@ public class UserService {
                 "Попытка удалить несуществующего пользователя с id: " + id);
 
         userRepository.delete(id);
+        // вместе с пользователем удалились и его лайки: у каждого фильма, который он лайкал, в рейтинге
+        // становится на лайк меньше. Пока индекс лайков не загружен, фильмы пользователя неизвестны,
+        // и рейтинг перестраивается целиком
+        boolean likesKnown = likeIndex.isReady();
+        long[] likedFilms = likeIndex.removeUser(id);
+        if (likesKnown) {
+            Map<Long, Long> deltas = new HashMap<>();
+            for (long filmId : likedFilms) {
+                deltas.put(filmId, -1L);
+            }
+            leaderboard.addLikes(deltas);
+        } else {
+            leaderboard.rebuild();
+        }
+        filmRepository.invalidateCache();
+        recommendationStore.clear();
+        // отзывы пользователя удалены каскадно
+        reviewRepository.reloadIds();
+        timelineStore.removeUser(id);
         log.info("Был удалён пользователь с id: {}", id);
     }
 
@@ -242,13 +356,14 @@ public class UserService {
                 new NotFoundException("Не существует пользователь с id: " + friendId),
                 "Попытка удалить из друзей несуществующего пользователя с id: " + friendId);
 
-        if (!getAllFriends(id).contains(get(friendId))) {
+        if (!userRepository.get(id).getFriendStatusMap().containsKey(friendId)) {
             log.info("Попытка удалить из друзей несуществующего друга с id: {}", friendId);
             return;
             //throw new NotFoundException("У пользователя с id: " + id + " нет друга с id: " + friendId);
         }
 
         userRepository.deleteFriend(id, friendId);
+        timelineStore.removeFriend(id, friendId);
         log.info("У пользователя с id: {} был удалён друг с id: {}", id, friendId);
 
         feedRepository.addEventToFeed(id, EventType.FRIEND, Operation.REMOVE, friendId);
@@ -258,20 +373,25 @@ public class UserService {
 
     public void deleteAll() {
         userRepository.deleteAll();
+        leaderboard.resetLikeCounts();
+        likeIndex.clear();
+        filmRepository.invalidateCache();
+        recommendationStore.clear();
+        reviewRepository.reloadIds();
+        timelineStore.clear();
         log.info("Таблица user была очищена");
     }
 
+    // Для проверки из других сервисов, которым сам пользователь не нужен
+    public void validateUserExists(Long id) {
+        validateUserExists(Optional.of(id),
+                new NotFoundException("Не существует пользователь с id: " + id),
+                "Попытка получить несуществующего пользователя с id: " + id);
+    }
+
     private void validateUserExists(Optional<Long> id,
                                     RuntimeException e, String logMessage) {
-        try {
-            if (id.isPresent()) {
-                Optional<User> result = Optional.ofNullable(userRepository.get(id.get()));
-                if (result.isEmpty()) {
-                    log.info(logMessage);
-                    throw e;
-                }
-            }
-        } catch (EmptyResultDataAccessException ex) {
+        if (id.isPresent() && !userRepository.exists(id.get())) {
             log.info(logMessage);
             throw e;
         }
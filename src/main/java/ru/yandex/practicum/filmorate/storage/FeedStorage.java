@@ -7,7 +7,11 @@ import ru.yandex.practicum.filmorate.model.UserEvent;
 import java.util.List;
 
 public interface FeedStorage {
-    List<UserEvent> getFeed(Long id);
+    // События пользователя с event_id больше afterEventId по возрастанию, не больше limit (null - без ограничения)
+    List<UserEvent> getFeed(Long id, long afterEventId, Long limit);
 
     void addEventToFeed(Long userId, EventType eventType, Operation operation, Long entityId);
+
+    // Пакетная запись уже сформированных событий, время события берётся из timestamp
+    void addEventsToFeed(List<UserEvent> events);
 }
\ No newline at end of file
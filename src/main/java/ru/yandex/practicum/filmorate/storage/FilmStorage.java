@@ -1,29 +1,51 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
 import java.time.Year;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film get(Long id);
 
+    boolean exists(Long id);
+
     Collection<Film> getAll();
 
+    // Фильмы с id больше afterId по возрастанию id, по одному, без сборки общей коллекции.
+    // limit == null - до конца таблицы
+    void stream(long afterId, Long limit, Set<FilmField> fields, Consumer<Film> consumer);
+
     Collection<Film> getPopular(Long limit, Long genreId, Year year);
 
-    Collection<Film> getByDirector(Long directorId, String sortBy);
+    // afterId - последний фильм предыдущей страницы в той же сортировке, null - первая страница
+    Collection<Film> getByDirector(Long directorId, String sortBy, Long afterId, long limit, Set<FilmField> fields);
 
     List<Film> getCommonFilms(Long userId, Long friendId);
 
     List<Film> getByListIds(Set<Long> ids);
 
+    // Возвращает фильмы в порядке переданных id, несуществующие id пропускаются
+    List<Film> getByIds(Collection<Long> ids);
+
+    List<Film> getByIds(Collection<Long> ids, Set<FilmField> fields);
+
     Film add(Film film);
 
-    Set<Long> addLike(Long filmId, Long userId);
+    // Фильмы со ссылками только на существующие жанры, рейтинги и режиссёров, одной транзакцией
+    List<Film> addAll(List<Film> films);
+
+    // false, если пользователь уже лайкнул фильм
+    boolean addLike(Long filmId, Long userId);
+
+    // Возвращает только лайки, которых до этого не было
+    List<FilmLike> addLikes(Collection<FilmLike> likes);
 
     Film update(Film film);
 
@@ -33,5 +55,13 @@ public interface FilmStorage {
 
     boolean deleteLike(Long filmId, Long userId);
 
-    Collection<Film> search(String query, String by);
+    int rebuildLikeCounts();
+
+    // Фильмы по убыванию популярности после фильма afterId по тому же порядку (null - с начала), не больше limit
+    Collection<Film> search(String query, String by, Long afterId, Long limit, Set<FilmField> fields);
+
+    // Сбрасывает закэшированные фильмы после изменений, сделанных в обход хранилища фильмов
+    // (удаление пользователя вместе с лайками, изменение справочников). Хранилище без кэша ничего не делает
+    default void invalidateCache() {
+    }
 }
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Collection;
+import java.util.Map;
+
+// Общие операции справочников: жанров, рейтингов MPA и режиссёров
+public interface ReferenceStorage<T> {
+    T get(Long id);
+
+    // Записи по id; id, которых нет в БД, в результат не попадают
+    Map<Long, T> getByIds(Collection<Long> ids);
+
+    Collection<T> getAll();
+
+    T add(T value);
+
+    T update(T value);
+
+    boolean delete(Long id);
+
+    boolean deleteAll();
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Review;
+
 import java.util.List;
 
 public interface ReviewStorage {
@@ -39,31 +40,34 @@ public interface ReviewStorage {
     void deleteAllLikesByReviewId(Long reviewId);*/
     Review get(Long reviewId);
 
+    boolean exists(Long reviewId);
+
+    // Отзывы удаляются каскадно вместе с фильмом или пользователем, после этого множество id нужно перечитать
+    void reloadIds();
+
     List<Review> getByFilmId(Long filmId);
 
     List<Review> getAll();
 
+    // Отзывы по убыванию useful, при равенстве - по возрастанию id. filmId == null - по всем фильмам,
+    // afterUseful и afterId задают последний отзыв предыдущей страницы (оба null - первая страница)
+    List<Review> getTop(Long filmId, int count, Integer afterUseful, Long afterId);
+
     Review add(Review review);
 
     Review update(Review review);
 
     boolean deleteById(Long reviewId);
 
-    int countLikes(Long reviewId);
+    // Ставит оценку пользователя и сразу сдвигает useful на разницу оценок. Лайк снимает прежний дизлайк,
+    // дизлайк заменяет прежний лайк
+    void vote(Long reviewId, Long userId, boolean isLike);
 
-    int countDislikes(Long reviewId);
-
-    boolean hasLike(Long reviewId, Long userId);
+    // false, если такой оценки не было
+    boolean deleteVote(Long reviewId, Long userId, boolean isLike);
 
-    boolean hasDislike(Long reviewId, Long userId);
-
-    void addLike(Long reviewId, Long userId);
-
-    void addDislike(Long reviewId, Long userId);
-
-    void deleteLike(Long reviewId, Long userId);
-
-    void deleteDislike(Long reviewId, Long userId);
+    // Пересчитывает useful по таблице review_likes, возвращает число исправленных отзывов
+    int rebuildUseful();
 
     void deleteAllLikesByReviewId(Long reviewId);
 }
\ No newline at end of file
@@ -6,16 +6,26 @@ import ru.yandex.practicum.filmorate.model.User;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     User get(Long id);
 
+    // Проверка существования без загрузки пользователя и его друзей
+    boolean exists(Long id);
+
     Collection<User> getAll();
 
+    // Пользователи с id больше afterId по возрастанию id, по одному, без сборки общей коллекции.
+    // limit == null - до конца таблицы
+    void stream(long afterId, Long limit, boolean withFriendMaps, Consumer<User> consumer);
+
     Collection<User> getCommonFriends(Long id, Long otherId);
 
-    public Collection<User> getAllFriends(Long id);
+    Collection<User> getAllFriends(Long id);
+
+    Collection<User> getFriends(Long id, long offset, Long limit, boolean withFriendMaps);
 
     FriendshipStatus getFriendshipStatus(Long id, Long otherId);
 
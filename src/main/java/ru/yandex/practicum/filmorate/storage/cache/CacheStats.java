@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+public record CacheStats(String name, int size, long hits, long misses, long evictions, double hitRatio) {
+
+    public static CacheStats of(String name, int size, long hits, long misses, long evictions) {
+        long requests = hits + misses;
+        return new CacheStats(name, size, hits, misses, evictions, requests == 0 ? 0 : (double) hits / requests);
+    }
+}
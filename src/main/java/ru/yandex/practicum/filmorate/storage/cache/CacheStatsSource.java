@@ -0,0 +1,5 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+public interface CacheStatsSource {
+    CacheStats getStats();
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.dal.DirectorRepository;
+
+// Режиссёры нужны при добавлении и выдаче фильмов. Изменения через API сбрасывают затронутые записи кэша
+@Primary
+@Component
+public class CachedDirectorStorage extends CachedReferenceStorage<Director> implements DirectorStorage {
+    public CachedDirectorStorage(DirectorRepository delegate,
+                                 @Value("${filmorate.reference-cache.max-size:1000}") int maxSize) {
+        super("director", delegate, maxSize, Director::getId, director -> director.toBuilder().build());
+    }
+}
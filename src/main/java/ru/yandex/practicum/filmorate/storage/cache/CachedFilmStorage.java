@@ -0,0 +1,198 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dal.FilmRepository;
+
+import java.time.Year;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Кэш собранных фильмов перед FilmRepository: выдача фильма из БД - это пять запросов.
+// Любой изменяющий метод сбрасывает версию фильма уже после записи в БД
+@Primary
+@Component
+public class CachedFilmStorage implements FilmStorage, CacheStatsSource {
+    private final FilmRepository delegate;
+    private final VersionedCache<Film> cache;
+
+    public CachedFilmStorage(FilmRepository delegate,
+                             @Value("${filmorate.film-cache.max-size:10000}") int maxSize) {
+        this.delegate = delegate;
+        this.cache = new VersionedCache<>("film", maxSize, Film::getId, CachedFilmStorage::copy);
+    }
+
+    @Override
+    public Film get(Long id) {
+        return cache.get(id, delegate::get);
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return delegate.exists(id);
+    }
+
+    @Override
+    public List<Film> getByIds(Collection<Long> ids) {
+        return cache.getAll(ids, delegate::getByIds);
+    }
+
+    // Фильмы в кэше собраны полностью, лишние данные просто не отдаются
+    @Override
+    public List<Film> getByIds(Collection<Long> ids, Set<FilmField> fields) {
+        List<Film> films = getByIds(ids);
+        films.forEach(film -> FilmField.project(film, fields));
+        return films;
+    }
+
+    @Override
+    public List<Film> getByListIds(Set<Long> ids) {
+        return getByIds(ids);
+    }
+
+    // Списочные запросы идут мимо кэша: их результат зависит от многих фильмов сразу
+    @Override
+    public Collection<Film> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public void stream(long afterId, Long limit, Set<FilmField> fields, Consumer<Film> consumer) {
+        delegate.stream(afterId, limit, fields, consumer);
+    }
+
+    @Override
+    public Collection<Film> getPopular(Long limit, Long genreId, Year year) {
+        return delegate.getPopular(limit, genreId, year);
+    }
+
+    @Override
+    public Collection<Film> getByDirector(Long directorId, String sortBy, Long afterId, long limit,
+                                          Set<FilmField> fields) {
+        return delegate.getByDirector(directorId, sortBy, afterId, limit, fields);
+    }
+
+    @Override
+    public List<Film> getCommonFilms(Long userId, Long friendId) {
+        return delegate.getCommonFilms(userId, friendId);
+    }
+
+    @Override
+    public Collection<Film> search(String query, String by, Long afterId, Long limit, Set<FilmField> fields) {
+        return delegate.search(query, by, afterId, limit, fields);
+    }
+
+    @Override
+    public Film add(Film film) {
+        return delegate.add(film);
+    }
+
+    @Override
+    public List<Film> addAll(List<Film> films) {
+        return delegate.addAll(films);
+    }
+
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        try {
+            return delegate.addLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public List<FilmLike> addLikes(Collection<FilmLike> likes) {
+        try {
+            return delegate.addLikes(likes);
+        } finally {
+            likes.stream().map(FilmLike::filmId).distinct().forEach(cache::invalidate);
+        }
+    }
+
+    @Override
+    public Film update(Film film) {
+        try {
+            return delegate.update(film);
+        } finally {
+            cache.invalidate(film.getId());
+        }
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public boolean deleteAll() {
+        try {
+            return delegate.deleteAll();
+        } finally {
+            invalidateCache();
+        }
+    }
+
+    @Override
+    public boolean deleteLike(Long filmId, Long userId) {
+        try {
+            return delegate.deleteLike(filmId, userId);
+        } finally {
+            cache.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public int rebuildLikeCounts() {
+        int repaired = delegate.rebuildLikeCounts();
+        if (repaired > 0) {
+            invalidateCache();
+        }
+        return repaired;
+    }
+
+    @Override
+    public void invalidateCache() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    // Модели изменяемые, поэтому наружу отдаются копии вместе с вложенными коллекциями
+    private static Film copy(Film film) {
+        Set<Genre> genres = new LinkedHashSet<>();
+        for (Genre genre : film.getGenres()) {
+            genres.add(genre.toBuilder().build());
+        }
+
+        Set<Director> directors = new HashSet<>();
+        for (Director director : film.getDirectors()) {
+            directors.add(director.toBuilder().build());
+        }
+
+        return film.toBuilder()
+                .likes(new LinkedHashSet<>(film.getLikes()))
+                .genres(genres)
+                .directors(directors)
+                .ratingMpa(film.getRatingMpa() == null ? null : film.getRatingMpa().toBuilder().build())
+                .build();
+    }
+}
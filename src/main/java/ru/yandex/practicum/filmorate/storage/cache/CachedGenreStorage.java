@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.dal.GenreRepository;
+
+// Жанры читаются при выдаче каждого фильма, а меняются крайне редко, поэтому справочник отдаётся из кэша
+@Primary
+@Component
+public class CachedGenreStorage extends CachedReferenceStorage<Genre> implements GenreStorage {
+    public CachedGenreStorage(GenreRepository delegate,
+                              @Value("${filmorate.reference-cache.max-size:1000}") int maxSize) {
+        super("genre", delegate, maxSize, Genre::getId, genre -> genre.toBuilder().build());
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.RatingMpa;
+import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
+import ru.yandex.practicum.filmorate.storage.dal.RatingMpaRepository;
+
+// Рейтингов MPA всего несколько и они практически не меняются - держим их в памяти
+@Primary
+@Component
+public class CachedRatingMpaStorage extends CachedReferenceStorage<RatingMpa> implements RatingMpaStorage {
+    public CachedRatingMpaStorage(RatingMpaRepository delegate,
+                                  @Value("${filmorate.reference-cache.max-size:1000}") int maxSize) {
+        super("rating", delegate, maxSize, RatingMpa::getId, rating -> rating.toBuilder().build());
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import ru.yandex.practicum.filmorate.storage.ReferenceStorage;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+// Справочник, который отдаётся из ReferenceDataCache. Справочники читаются при выдаче каждого фильма,
+// а меняются редко и только через API, поэтому изменения сбрасывают затронутые записи кэша.
+// Наследники только привязывают хранилище к своему интерфейсу и задают имя кэша
+public class CachedReferenceStorage<T> implements ReferenceStorage<T>, CacheStatsSource {
+    private final ReferenceStorage<T> delegate;
+    private final Function<T, Long> idGetter;
+    private final ReferenceDataCache<T> cache;
+
+    protected CachedReferenceStorage(String name, ReferenceStorage<T> delegate, int maxSize,
+                                     Function<T, Long> idGetter, UnaryOperator<T> copier) {
+        this.delegate = delegate;
+        this.idGetter = idGetter;
+        this.cache = new ReferenceDataCache<>(name, maxSize, idGetter, copier);
+    }
+
+    @Override
+    public T get(Long id) {
+        return cache.get(id, delegate::get);
+    }
+
+    @Override
+    public Map<Long, T> getByIds(Collection<Long> ids) {
+        return cache.getByIds(ids, delegate::getByIds);
+    }
+
+    @Override
+    public Collection<T> getAll() {
+        return cache.getAll(delegate::getAll);
+    }
+
+    @Override
+    public T add(T value) {
+        T added = delegate.add(value);
+        cache.invalidate(idGetter.apply(added));
+        return added;
+    }
+
+    @Override
+    public T update(T value) {
+        try {
+            return delegate.update(value);
+        } finally {
+            cache.invalidate(idGetter.apply(value));
+        }
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public boolean deleteAll() {
+        try {
+            return delegate.deleteAll();
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+}
@@ -0,0 +1,152 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FriendshipStatus;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dal.UserRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Кэш пользователей вместе с картой друзей. Изменение дружбы меняет карту только у пользователя из user_id,
+// а обновление пользователя целиком затрагивает и записи его друзей, поэтому сбрасываются и они
+@Primary
+@Component
+public class CachedUserStorage implements UserStorage, CacheStatsSource {
+    private final UserRepository delegate;
+    private final VersionedCache<User> cache;
+
+    public CachedUserStorage(UserRepository delegate,
+                             @Value("${filmorate.user-cache.max-size:10000}") int maxSize) {
+        this.delegate = delegate;
+        this.cache = new VersionedCache<>("user", maxSize, User::getId, CachedUserStorage::copy);
+    }
+
+    @Override
+    public User get(Long id) {
+        return cache.get(id, delegate::get);
+    }
+
+    // Проверка по множеству id в памяти, кэш пользователей для неё не нужен
+    @Override
+    public boolean exists(Long id) {
+        return delegate.exists(id);
+    }
+
+    @Override
+    public Collection<User> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public void stream(long afterId, Long limit, boolean withFriendMaps, Consumer<User> consumer) {
+        delegate.stream(afterId, limit, withFriendMaps, consumer);
+    }
+
+    @Override
+    public Collection<User> getCommonFriends(Long id, Long otherId) {
+        return delegate.getCommonFriends(id, otherId);
+    }
+
+    @Override
+    public Collection<User> getAllFriends(Long id) {
+        return delegate.getAllFriends(id);
+    }
+
+    @Override
+    public Collection<User> getFriends(Long id, long offset, Long limit, boolean withFriendMaps) {
+        return delegate.getFriends(id, offset, limit, withFriendMaps);
+    }
+
+    @Override
+    public FriendshipStatus getFriendshipStatus(Long id, Long otherId) {
+        return delegate.getFriendshipStatus(id, otherId);
+    }
+
+    @Override
+    public User add(User user) {
+        return delegate.add(user);
+    }
+
+    @Override
+    public User addFriend(Long id, Long friendId, FriendshipStatus status) {
+        try {
+            return delegate.addFriend(id, friendId, status);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public User update(User user) {
+        try {
+            return delegate.update(user);
+        } finally {
+            cache.invalidate(user.getId());
+            if (user.getFriendStatusMap() != null) {
+                for (Long friendId : user.getFriendStatusMap().keySet()) {
+                    cache.invalidate(friendId);
+                }
+            }
+        }
+    }
+
+    @Override
+    public FriendshipStatus updateFriendshipStatus(Long id, Long friendId, FriendshipStatus friendshipStatus) {
+        try {
+            return delegate.updateFriendshipStatus(id, friendId, friendshipStatus);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    // Удаление пользователя может задеть карты друзей у других пользователей, проще сбросить кэш целиком
+    @Override
+    public boolean delete(Long id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public boolean deleteAll() {
+        try {
+            return delegate.deleteAll();
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public boolean deleteFriend(Long id, Long friendId) {
+        try {
+            return delegate.deleteFriend(id, friendId);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public Map<Long, Set<Long>> getSimilarUserLikes(Long id) {
+        return delegate.getSimilarUserLikes(id);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    private static User copy(User user) {
+        return user.toBuilder()
+                .friendStatusMap(user.getFriendStatusMap() == null ? null : new HashMap<>(user.getFriendStatusMap()))
+                .build();
+    }
+}
@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Кэш справочника (жанры, рейтинги, режиссёры) перед хранилищем в БД.
+// Отдельные записи лежат в LRU ограниченного размера, полный список - отдельным снимком,
+// который хранится, только если помещается в тот же лимит. Наружу отдаются копии,
+// так как модели изменяемые. Любое изменение справочника сбрасывает затронутые записи и снимок.
+// Отсутствие записи тоже кэшируется (значение null), чтобы ссылки на удалённые записи не ходили в БД каждый раз:
+// добавление записи через хранилище сбрасывает её id, как и любое другое изменение
+@Slf4j
+public class ReferenceDataCache<T> {
+    private final String name;
+    private final int maxSize;
+    private final Function<T, Long> idGetter;
+    private final UnaryOperator<T> copier;
+
+    // значение null - записи с таким id нет в БД
+    private final Map<Long, T> byId;
+    private volatile List<T> all;
+    // счётчик сбросов: данные, загруженные из БД во время сброса, могли устареть и не кэшируются
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ReferenceDataCache(String name, int maxSize, Function<T, Long> idGetter, UnaryOperator<T> copier) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным: " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.idGetter = idGetter;
+        this.copier = copier;
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                boolean evict = size() > ReferenceDataCache.this.maxSize;
+                if (evict) {
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    // loader возвращает null для несуществующей записи
+    public T get(Long id, Function<Long, T> loader) {
+        synchronized (byId) {
+            if (byId.containsKey(id)) {
+                hits.increment();
+                return copy(byId.get(id));
+            }
+        }
+
+        misses.increment();
+        long invalidationsBefore = invalidations.get();
+        T value = loader.apply(id);
+        synchronized (byId) {
+            if (invalidations.get() == invalidationsBefore) {
+                byId.put(id, value);
+            }
+        }
+        return copy(value);
+    }
+
+    // Отсутствующие в кэше записи догружаются одним вызовом loader, несуществующих id в результате нет
+    public Map<Long, T> getByIds(Collection<Long> ids, Function<Collection<Long>, Map<Long, T>> loader) {
+        Map<Long, T> found = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        int cached = 0;
+        synchronized (byId) {
+            for (Long id : ids) {
+                if (byId.containsKey(id)) {
+                    cached++;
+                    T value = byId.get(id);
+                    if (value != null) {
+                        found.put(id, value);
+                    }
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+
+        hits.add(cached);
+        misses.add(missing.size());
+
+        if (!missing.isEmpty()) {
+            long invalidationsBefore = invalidations.get();
+            Map<Long, T> loaded = loader.apply(missing);
+            found.putAll(loaded);
+            synchronized (byId) {
+                if (invalidations.get() == invalidationsBefore) {
+                    for (Long id : missing) {
+                        byId.put(id, loaded.get(id));
+                    }
+                }
+            }
+        }
+
+        Map<Long, T> result = new HashMap<>(found.size() * 2);
+        found.forEach((id, value) -> result.put(id, copier.apply(value)));
+        return result;
+    }
+
+    public List<T> getAll(Supplier<Collection<T>> loader) {
+        List<T> snapshot = all;
+        if (snapshot != null) {
+            hits.increment();
+            return copyAll(snapshot);
+        }
+
+        misses.increment();
+        long invalidationsBefore = invalidations.get();
+        List<T> loaded = List.copyOf(loader.get());
+
+        if (loaded.size() <= maxSize) {
+            synchronized (byId) {
+                if (invalidations.get() == invalidationsBefore) {
+                    all = loaded;
+                    for (T value : loaded) {
+                        byId.put(idGetter.apply(value), value);
+                    }
+                }
+            }
+        }
+        return copyAll(loaded);
+    }
+
+    public void invalidate(Long id) {
+        synchronized (byId) {
+            invalidations.incrementAndGet();
+            byId.remove(id);
+            all = null;
+        }
+        log.debug("Из кэша {} удалена запись с id: {}", name, id);
+    }
+
+    public void invalidateAll() {
+        synchronized (byId) {
+            invalidations.incrementAndGet();
+            byId.clear();
+            all = null;
+        }
+        log.debug("Кэш {} очищен", name);
+    }
+
+    public CacheStats getStats() {
+        synchronized (byId) {
+            return CacheStats.of(name, byId.size(), hits.sum(), misses.sum(), evictions.sum());
+        }
+    }
+
+    private T copy(T value) {
+        return value == null ? null : copier.apply(value);
+    }
+
+    private List<T> copyAll(List<T> values) {
+        List<T> result = new ArrayList<>(values.size());
+        for (T value : values) {
+            result.add(copier.apply(value));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+// LRU-кэш сущностей по id с версиями записей.
+// Каждая запись помнит версию, с которой была загружена; изменение сущности после записи в БД увеличивает
+// её версию, и запись с устаревшей версией считается промахом. Поэтому чтение, которое пересеклось
+// с изменением, не попадёт в кэш. Версии хранятся не по id, а по фиксированному числу полос,
+// поэтому не растут вместе с таблицей. Наружу отдаются копии, так как модели изменяемые
+@Slf4j
+public class VersionedCache<T> {
+    private static final int VERSION_STRIPES = 1024;
+
+    private final String name;
+    private final int maxSize;
+    private final Function<T, Long> idGetter;
+    private final UnaryOperator<T> copier;
+
+    private final Map<Long, Entry<T>> entries;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VersionedCache(String name, int maxSize, Function<T, Long> idGetter, UnaryOperator<T> copier) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным: " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.idGetter = idGetter;
+        this.copier = copier;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<T>> eldest) {
+                boolean evict = size() > VersionedCache.this.maxSize;
+                if (evict) {
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    // Несуществующие сущности не кэшируются, loader может вернуть null
+    public T get(Long id, Function<Long, T> loader) {
+        long version = versionOf(id);
+        T cached = lookup(id, version);
+        if (cached != null) {
+            hits.increment();
+            return copier.apply(cached);
+        }
+
+        misses.increment();
+        T value = loader.apply(id);
+        if (value != null) {
+            store(value, version);
+            return copier.apply(value);
+        }
+        return null;
+    }
+
+    // Отсутствующие в кэше сущности догружаются одним вызовом loader, порядок ids сохраняется
+    public List<T> getAll(Collection<Long> ids, Function<Collection<Long>, Collection<T>> loader) {
+        Map<Long, T> found = new HashMap<>();
+        Map<Long, Long> missingVersions = new LinkedHashMap<>();
+
+        for (Long id : ids) {
+            long version = versionOf(id);
+            T cached = lookup(id, version);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missingVersions.put(id, version);
+            }
+        }
+
+        hits.add(found.size());
+        misses.add(missingVersions.size());
+
+        if (!missingVersions.isEmpty()) {
+            for (T value : loader.apply(missingVersions.keySet())) {
+                Long id = idGetter.apply(value);
+                store(value, missingVersions.get(id));
+                found.put(id, value);
+            }
+        }
+
+        List<T> result = new ArrayList<>(found.size());
+        for (Long id : ids) {
+            T value = found.get(id);
+            if (value != null) {
+                result.add(copier.apply(value));
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(Long id) {
+        synchronized (entries) {
+            versions.incrementAndGet(stripe(id));
+            entries.remove(id);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            for (int i = 0; i < VERSION_STRIPES; i++) {
+                versions.incrementAndGet(i);
+            }
+            entries.clear();
+        }
+        log.debug("Кэш {} очищен", name);
+    }
+
+    public CacheStats getStats() {
+        synchronized (entries) {
+            return CacheStats.of(name, entries.size(), hits.sum(), misses.sum(), evictions.sum());
+        }
+    }
+
+    private T lookup(Long id, long version) {
+        synchronized (entries) {
+            Entry<T> entry = entries.get(id);
+            return entry != null && entry.version() == version ? entry.value() : null;
+        }
+    }
+
+    // Сущность, загруженная до изменения, не попадёт в кэш: к этому моменту версия уже увеличена
+    private void store(T value, long version) {
+        Long id = idGetter.apply(value);
+        synchronized (entries) {
+            if (versionOf(id) == version) {
+                entries.put(id, new Entry<>(value, version));
+            }
+        }
+    }
+
+    private long versionOf(Long id) {
+        return versions.get(stripe(id));
+    }
+
+    private static int stripe(Long id) {
+        return Long.hashCode(id) & (VERSION_STRIPES - 1);
+    }
+
+    private record Entry<T>(T value, long version) {
+    }
+}
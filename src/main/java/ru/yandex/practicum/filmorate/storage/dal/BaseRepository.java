@@ -1,6 +1,5 @@
 package ru.yandex.practicum.filmorate.storage.dal;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -8,13 +7,25 @@ import org.springframework.jdbc.core.RowMapper;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 @Slf4j
-@RequiredArgsConstructor
 public class BaseRepository<T> {
     protected final JdbcTemplate jdbc;
     protected final RowMapper<T> mapper;
+    private final IdAllocator idAllocator;
+
+    public BaseRepository(JdbcTemplate jdbc, RowMapper<T> mapper) {
+        this(jdbc, mapper, null);
+    }
+
+    // для репозиториев, которые сами выдают id новым записям
+    public BaseRepository(JdbcTemplate jdbc, RowMapper<T> mapper, IdAllocator idAllocator) {
+        this.jdbc = jdbc;
+        this.mapper = mapper;
+        this.idAllocator = idAllocator;
+    }
 
     protected T findOne(String query, Object... params) {
         try {
@@ -28,6 +39,30 @@ public class BaseRepository<T> {
         return jdbc.query(query, mapper, params);
     }
 
+    // Чтение большой выборки страницами по id: pageQuery выбирает строки с id больше переданного,
+    // упорядоченные по id, не больше заданного числа (WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY).
+    // Соединение занято только на время чтения страницы, поэтому pageConsumer может догружать связи
+    // и писать ответ медленному клиенту, не удерживая соединение из пула
+    protected void streamPages(String pageQuery, ToLongFunction<T> idOf, long afterId, Long limit, int pageSize,
+                               Consumer<List<T>> pageConsumer) {
+        long remaining = limit != null ? limit : Long.MAX_VALUE;
+        long after = afterId;
+        while (remaining > 0) {
+            int size = (int) Math.min(pageSize, remaining);
+            List<T> page = findMany(pageQuery, after, size);
+            if (page.isEmpty()) {
+                return;
+            }
+
+            after = idOf.applyAsLong(page.get(page.size() - 1));
+            remaining -= page.size();
+            pageConsumer.accept(page);
+            if (page.size() < size) {
+                return;
+            }
+        }
+    }
+
     protected void insert(String query, Object... params) {
         int rowsUpdated = jdbc.update(query, params);
 
@@ -58,31 +93,11 @@ public class BaseRepository<T> {
     }
 
     protected Long nextIdByTable(String tableName) {
-        String stm = "SELECT MAX(id) FROM ";
-
-        // чтобы работало лишь с таблицами, откуда возможно и может потребоваться получить ID
-        // не забывать добавлять новые таблицы сюда!
-        switch (tableName) {
-            case "user" -> {
-                tableName = "\"user\"";
-            }
-            case "friend" -> {
-                tableName = "\"friend\"";
-            }
-            case "film", "genre", "rating", "friendship_status", "director" -> {
-                // игнорируем
-            }
-            default -> {
-                log.info("Ошибка при получении ID из таблицы {}", tableName);
-                throw new InternalServerException("Внутренняя ошибка сервера. " +
-                        "Можно получить ID только у следующих таблиц: " +
-                        "user, film, genre, rating, friendship_status, reviews");
-            }
+        if (idAllocator == null) {
+            log.info("Ошибка при получении ID из таблицы {}: репозиторий создан без IdAllocator", tableName);
+            throw new InternalServerException("Внутренняя ошибка сервера. Репозиторий не выдаёт ID");
         }
 
-        stm += tableName;
-
-        Optional<Number> id = Optional.ofNullable(jdbc.queryForObject(stm, Number.class));
-        return id.map(value -> value.longValue() + 1).orElse(1L);
+        return idAllocator.next(tableName);
     }
-}
\ No newline at end of file
+}
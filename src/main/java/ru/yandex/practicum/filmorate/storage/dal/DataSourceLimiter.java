@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Ограничивает число соединений с БД, которые открыты одновременно, ниже числа потоков-носителей
+// виртуальных потоков. Ожидание соединения в пуле носитель не занимает, а вот выполнение запроса - занимает:
+// H2 работает в том же процессе и выполняет запрос внутри synchronized, на время которого виртуальный
+// поток закреплён за носителем. Если запросов выполняется столько же, сколько носителей, заняты все носители,
+// и стоят даже запросы, которым БД не нужна (например, отдаваемые из кэшей). Поэтому по умолчанию
+// (max-concurrency=-1) при включённых виртуальных потоках разрешений на одно меньше, чем носителей.
+// С одним носителем свободного носителя не оставить никаким ограничением, семафор только добавляет
+// очередь, и ограничения нет; без виртуальных потоков его тоже нет - число соединений ограничивает сам пул.
+// Если ограничение не меньше размера пула (spring.datasource.hikari.maximum-pool-size), оно ничего не добавляет
+// к ограничению пула, и семафор не ставится. Разрешение берётся при получении соединения
+// и возвращается при его закрытии. max-concurrency=0 отключает ограничение
+@Slf4j
+@Component
+public class DataSourceLimiter implements BeanPostProcessor {
+    private final int maxConcurrency;
+    private final Duration acquireTimeout;
+
+    public DataSourceLimiter(@Value("${filmorate.db.max-concurrency:-1}") int maxConcurrency,
+                             @Value("${filmorate.db.acquire-timeout:PT30S}") Duration acquireTimeout,
+                             @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                             @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        if (maxConcurrency < -1) {
+            throw new IllegalArgumentException("Некорректное ограничение соединений с БД: " + maxConcurrency);
+        }
+        if (maxConcurrency == -1) {
+            maxConcurrency = virtualThreads ? carriers() - 1 : 0;
+        }
+        if (maxConcurrency >= poolSize) {
+            log.info("Ограничение соединений с БД {} не меньше размера пула {}, семафор не нужен",
+                    maxConcurrency, poolSize);
+            maxConcurrency = 0;
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (maxConcurrency == 0 || !(bean instanceof DataSource dataSource)
+                || bean instanceof LimitedDataSource) {
+            return bean;
+        }
+
+        log.info("Соединения с БД ({}) ограничены: {}, ожидание до {}", beanName, maxConcurrency, acquireTimeout);
+        return new LimitedDataSource(dataSource, new Semaphore(maxConcurrency, true), acquireTimeout.toNanos());
+    }
+
+    // Число носителей виртуальных потоков: по умолчанию по числу процессоров
+    private static int carriers() {
+        return Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    private static final class LimitedDataSource extends DelegatingDataSource {
+        private final Semaphore permits;
+        private final long timeoutNanos;
+
+        private LimitedDataSource(DataSource target, Semaphore permits, long timeoutNanos) {
+            super(target);
+            this.permits = permits;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            acquire();
+            try {
+                return limited(super.getConnection());
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            acquire();
+            try {
+                return limited(super.getConnection(username, password));
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private void acquire() throws SQLException {
+            try {
+                if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    throw new SQLTransientConnectionException("Не дождались свободного соединения с БД за "
+                            + Duration.ofNanos(timeoutNanos) + ", ожидают: " + permits.getQueueLength());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Ожидание соединения с БД прервано", e);
+            }
+        }
+
+        // Разрешение возвращается при первом close(), повторные вызовы его не трогают
+        private Connection limited(Connection connection) {
+            AtomicBoolean released = new AtomicBoolean(false);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                            try {
+                                connection.close();
+                            } finally {
+                                if (released.compareAndSet(false, true)) {
+                                    permits.release();
+                                }
+                            }
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
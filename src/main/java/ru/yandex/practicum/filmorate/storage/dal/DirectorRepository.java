@@ -9,7 +9,10 @@ import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
@@ -17,6 +20,9 @@ public class DirectorRepository extends BaseRepository<Director> implements Dire
     private static final String GET_ONE = """
             SELECT * FROM director WHERE id = ?
             """;
+    private static final String GET_BY_IDS = """
+            SELECT * FROM director WHERE id = ANY(?)
+            """;
     private static final String GET_ALL = """
             SELECT * FROM director
             """;
@@ -45,8 +51,8 @@ public class DirectorRepository extends BaseRepository<Director> implements Dire
             """;
 
 
-    public DirectorRepository(JdbcTemplate jdbc, RowMapper<Director> mapper) {
-        super(jdbc, mapper);
+    public DirectorRepository(JdbcTemplate jdbc, RowMapper<Director> mapper, IdAllocator idAllocator) {
+        super(jdbc, mapper, idAllocator);
     }
 
     @Override
@@ -54,6 +60,12 @@ public class DirectorRepository extends BaseRepository<Director> implements Dire
         return findOne(GET_ONE, id);
     }
 
+    @Override
+    public Map<Long, Director> getByIds(Collection<Long> ids) {
+        return findMany(GET_BY_IDS, (Object) ids.toArray(new Long[0])).stream()
+                .collect(Collectors.toMap(Director::getId, Function.identity()));
+    }
+
     @Override
     public Collection<Director> getAll() {
         return findMany(GET_ALL);
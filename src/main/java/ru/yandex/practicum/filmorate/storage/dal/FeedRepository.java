@@ -1,40 +1,89 @@
 package ru.yandex.practicum.filmorate.storage.dal;
 
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.model.UserEvent;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.dal.mapper.EventRowMapper;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class FeedRepository extends BaseRepository<UserEvent> implements FeedStorage {
     private static final String GET_USER_FEED = """
             SELECT event_id, user_id, event_type, operation, entity_id, timestamp
             FROM user_event
-            WHERE user_id = ?
+            WHERE user_id = ? AND event_id > ?
             ORDER BY event_id
             """;
+    private static final String GET_USER_FEED_PAGE = GET_USER_FEED + """
+            FETCH FIRST ? ROWS ONLY
+            """;
 
     private static final String INSERT_EVENT = """
             INSERT INTO user_event (user_id, event_type, operation, entity_id)
             VALUES (?, ?, ?, ?)
             """;
 
+    private static final String INSERT_EVENT_WITH_TIMESTAMP = """
+            INSERT INTO user_event (user_id, event_type, operation, entity_id, timestamp)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
     public FeedRepository(JdbcTemplate jdbc, EventRowMapper mapper) {
         super(jdbc, mapper);
     }
 
     @Override
-    public List<UserEvent> getFeed(Long id) {
-        return jdbc.query(GET_USER_FEED, mapper, id);
+    public List<UserEvent> getFeed(Long id, long afterEventId, Long limit) {
+        return limit == null
+                ? findMany(GET_USER_FEED, id, afterEventId)
+                : findMany(GET_USER_FEED_PAGE, id, afterEventId, limit);
     }
 
     @Override
     public void addEventToFeed(Long userId, EventType eventType, Operation operation, Long entityId) {
         insert(INSERT_EVENT, userId, eventType.name(), operation.name(), entityId);
     }
+
+    @Override
+    @Transactional
+    public void addEventsToFeed(List<UserEvent> events) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_EVENT_WITH_TIMESTAMP, new String[]{"event_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        UserEvent event = events.get(i);
+                        ps.setLong(1, event.getUserId());
+                        ps.setString(2, event.getEventType().name());
+                        ps.setString(3, event.getOperation().name());
+                        ps.setLong(4, event.getEntityId());
+                        ps.setTimestamp(5, new Timestamp(event.getTimestamp()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return events.size();
+                    }
+                },
+                keyHolder);
+
+        // id нужны лентам друзей, ключи возвращаются в порядке строк пакета
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < keys.size() && i < events.size(); i++) {
+            events.get(i).setEventId(((Number) keys.get(i).get("event_id")).longValue());
+        }
+    }
 }
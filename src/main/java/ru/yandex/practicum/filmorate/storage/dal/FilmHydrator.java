@@ -0,0 +1,221 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMpa;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// Догружает связанные с фильмами данные сразу для всей пачки фильмов:
+// по одному запросу на лайки, жанры, рейтинг и режиссёров, независимо от размера пачки.
+// Из связующих таблиц берутся только id, названия жанров, рейтингов и режиссёров подставляются из справочников.
+// Для одного фильма запросы можно выполнять параллельно (filmorate.films.parallel-hydration.enabled):
+// тогда ответ ждёт самый медленный из них, а не их сумму, но фильм занимает до четырёх соединений сразу.
+// Пул потоков ограничен, при заполненной очереди запрос выполняется в вызывающем потоке,
+// так что под нагрузкой режим сам сводится к последовательному
+@Slf4j
+@Component
+public class FilmHydrator {
+    private static final String GET_LIKES_BY_FILM_IDS = """
+            SELECT film_id, user_id
+            FROM "like"
+            WHERE film_id = ANY(?)
+            """;
+    private static final String GET_GENRES_BY_FILM_IDS = """
+            SELECT film_id, genre_id
+            FROM film_genre
+            WHERE film_id = ANY(?)
+            ORDER BY genre_id ASC
+            """;
+    private static final String GET_RATINGS_BY_FILM_IDS = """
+            SELECT film_id, rating_id
+            FROM film_rating
+            WHERE film_id = ANY(?)
+            """;
+    private static final String GET_DIRECTORS_BY_FILM_IDS = """
+            SELECT film_id, director_id
+            FROM film_director
+            WHERE film_id = ANY(?)
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final GenreStorage genreStorage;
+    private final RatingMpaStorage ratingMpaStorage;
+    private final DirectorStorage directorStorage;
+    private final ThreadPoolExecutor executor;
+
+    public FilmHydrator(JdbcTemplate jdbc, GenreStorage genreStorage,
+                        RatingMpaStorage ratingMpaStorage, DirectorStorage directorStorage,
+                        @Value("${filmorate.films.parallel-hydration.enabled:false}") boolean parallel,
+                        @Value("${filmorate.films.parallel-hydration.threads:8}") int threads,
+                        @Value("${filmorate.films.parallel-hydration.queue-capacity:32}") int queueCapacity) {
+        this.jdbc = jdbc;
+        this.genreStorage = genreStorage;
+        this.ratingMpaStorage = ratingMpaStorage;
+        this.directorStorage = directorStorage;
+
+        if (!parallel) {
+            this.executor = null;
+            return;
+        }
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Некорректные размеры пула догрузки фильмов: threads=" + threads
+                    + ", queue-capacity=" + queueCapacity);
+        }
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("film-hydrator-", 0).daemon().factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        log.info("Параллельная догрузка фильма включена, потоков: {}, очередь: {}", threads, queueCapacity);
+    }
+
+    public List<Film> hydrate(List<Film> films) {
+        return hydrate(films, EnumSet.allOf(FilmField.class));
+    }
+
+    // Запросы идут только за данными из fields, остальные поля остаются null
+    public List<Film> hydrate(List<Film> films, Set<FilmField> fields) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        Map<Long, Film> filmsById = prepare(films, fields);
+        // массив передаётся одним параметром, поэтому текст запроса не зависит от количества фильмов
+        Long[] filmIds = filmsById.keySet().toArray(new Long[0]);
+        for (FilmField field : fields) {
+            load(field, filmsById, filmIds);
+        }
+
+        log.debug("Догружены связанные данные {} для {} фильмов", fields, filmsById.size());
+        return films;
+    }
+
+    // Каждый запрос заполняет своё поле фильма, поэтому запросы не пересекаются по данным.
+    // Внутри транзакции запросы идут последовательно: в других потоках были бы другие соединения,
+    // которые не видят её незакоммиченных изменений
+    public Film hydrateOne(Film film) {
+        if (executor == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            hydrate(List.of(film));
+            return film;
+        }
+
+        Set<FilmField> fields = EnumSet.allOf(FilmField.class);
+        Map<Long, Film> filmsById = prepare(List.of(film), fields);
+        Long[] filmIds = {film.getId()};
+
+        List<CompletableFuture<Void>> loads = new ArrayList<>(fields.size());
+        for (FilmField field : fields) {
+            loads.add(CompletableFuture.runAsync(() -> load(field, filmsById, filmIds), executor));
+        }
+        try {
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // наружу уходит исходная ошибка доступа к данным, как при последовательной догрузке
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+
+        log.debug("Параллельно догружены связанные данные фильма с id: {}", film.getId());
+        return film;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static Map<Long, Film> prepare(List<Film> films, Set<FilmField> fields) {
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            // LinkedHashSet, дабы сохранять порядок, в котором записи пришли из БД
+            film.setLikes(fields.contains(FilmField.LIKES) ? new LinkedHashSet<>() : null);
+            film.setGenres(fields.contains(FilmField.GENRES) ? new LinkedHashSet<>() : null);
+            film.setDirectors(fields.contains(FilmField.DIRECTORS) ? new HashSet<>() : null);
+            filmsById.put(film.getId(), film);
+        }
+        return filmsById;
+    }
+
+    // Из связующих таблиц читаются только пары (фильм, запись справочника). Записи справочника подставляются
+    // после того, как запрос вернул все строки, одним обращением к справочнику на поле: промах кэша
+    // не берёт второе соединение, пока открыт ResultSet. Записи справочника могут быть удалены
+    // между запросами - такие связи пропускаются
+    private void load(FilmField field, Map<Long, Film> filmsById, Long[] filmIds) {
+        switch (field) {
+            case LIKES -> jdbc.query(GET_LIKES_BY_FILM_IDS, rs -> {
+                filmsById.get(rs.getLong("film_id")).getLikes().add(rs.getLong("user_id"));
+            }, (Object) filmIds);
+            case GENRES -> {
+                List<long[]> links = loadLinks(GET_GENRES_BY_FILM_IDS, "genre_id", filmIds);
+                Map<Long, Genre> genres = genreStorage.getByIds(referencedIds(links));
+                forEachResolved(links, genres, (film, genre) -> film.getGenres().add(genre), filmsById);
+            }
+            case MPA -> {
+                List<long[]> links = loadLinks(GET_RATINGS_BY_FILM_IDS, "rating_id", filmIds);
+                Map<Long, RatingMpa> ratings = ratingMpaStorage.getByIds(referencedIds(links));
+                forEachResolved(links, ratings, Film::setRatingMpa, filmsById);
+            }
+            case DIRECTORS -> {
+                List<long[]> links = loadLinks(GET_DIRECTORS_BY_FILM_IDS, "director_id", filmIds);
+                Map<Long, Director> directors = directorStorage.getByIds(referencedIds(links));
+                forEachResolved(links, directors, (film, director) -> film.getDirectors().add(director), filmsById);
+            }
+        }
+    }
+
+    // пары {id фильма, id записи справочника} в порядке строк запроса
+    private List<long[]> loadLinks(String query, String referenceColumn, Long[] filmIds) {
+        List<long[]> links = new ArrayList<>();
+        jdbc.query(query, rs -> {
+            links.add(new long[]{rs.getLong("film_id"), rs.getLong(referenceColumn)});
+        }, (Object) filmIds);
+        return links;
+    }
+
+    private static Set<Long> referencedIds(List<long[]> links) {
+        Set<Long> ids = new HashSet<>();
+        for (long[] link : links) {
+            ids.add(link[1]);
+        }
+        return ids;
+    }
+
+    private static <T> void forEachResolved(List<long[]> links, Map<Long, T> references,
+                                            BiConsumer<Film, T> setter, Map<Long, Film> filmsById) {
+        for (long[] link : links) {
+            T reference = references.get(link[1]);
+            if (reference != null) {
+                setter.accept(filmsById.get(link[0]), reference);
+            }
+        }
+    }
+}
@@ -10,128 +10,172 @@ import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.RatingMpa;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
+import ru.yandex.practicum.filmorate.storage.memory.IdSet;
 
 import java.time.Year;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
 public class FilmRepository extends BaseRepository<Film> implements FilmStorage {
+    public static final long DEFAULT_POPULAR_COUNT = 10;
+
     private static final String GET_ONE = """
             SELECT * FROM film WHERE id IN (?)
             """;
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final int LIKE_BATCH_SIZE = 5000;
+
+    private static final String GET_ALL_IDS = """
+            SELECT id FROM film
+            """;
     private static final String GET_ALL = """
             SELECT * FROM film
             """;
+    private static final String GET_PAGE = """
+            SELECT * FROM film
+            WHERE id > ?
+            ORDER BY id
+            FETCH FIRST ? ROWS ONLY
+            """;
+    private static final String GET_BY_IDS = """
+            SELECT * FROM film WHERE id = ANY(?)
+            """;
     private static final String GET_GENRE_ID_BY_NAME = """
             SELECT id FROM genre WHERE name IN (?)
             """;
     private static final String GET_RATING_ID_BY_NAME = """
             SELECT id FROM rating WHERE name IN (?)
             """;
-    private static final String GET_ALL_RATING_ID = """
-            SELECT id FROM rating
-            """;
-    private static final String GET_ALL_GENRE_ID = """
-            SELECT id FROM genre
-            """;
-    private static final String GET_ALL_DIRECTOR_ID = """
-            SELECT id FROM director
-            """;
-    private static final String GET_POPULAR_ID_BY_GENRE_AND_YEAR = """
-            SELECT f.id
+    // Фильтры по жанру и году применяются до сортировки, а сортировка идёт по денормализованному like_count.
+    // ORDER BY + LIMIT позволяет БД держать лишь top-K записей вместо сортировки всех фильмов
+    private static final String GET_POPULAR_BY_GENRE_AND_YEAR = """
+            SELECT f.*
             FROM film f
-            LEFT JOIN "like" l ON f.id = l.film_id
-            LEFT JOIN film_genre fg ON f.id = fg.film_id
-            WHERE fg.genre_id = ?
-            AND EXTRACT(YEAR FROM f.release_date) = ?
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
-            """;
-    private static final String GET_POPULAR_ID_BY_GENRE = """
-            SELECT f.id
+            WHERE EXISTS (SELECT 1 FROM film_genre fg WHERE fg.film_id = f.id AND fg.genre_id = ?)
+            AND f.release_date >= ? AND f.release_date < ?
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
+            """;
+    private static final String GET_POPULAR_BY_GENRE = """
+            SELECT f.*
             FROM film f
-            LEFT JOIN "like" l ON f.id = l.film_id
-            LEFT JOIN film_genre fg ON f.id = fg.film_id
-            WHERE fg.genre_id = ?
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
-            """;
-    private static final String GET_POPULAR_ID_BY_YEAR = """
-            SELECT f.id
+            WHERE EXISTS (SELECT 1 FROM film_genre fg WHERE fg.film_id = f.id AND fg.genre_id = ?)
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
+            """;
+    private static final String GET_POPULAR_BY_YEAR = """
+            SELECT f.*
             FROM film f
-            LEFT JOIN "like" l ON f.id = l.film_id
-            LEFT JOIN film_genre fg ON f.id = fg.film_id
-            WHERE EXTRACT(YEAR FROM f.release_date) = ?
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
-            """;
-    private static final String GET_POPULAR_ID = """
-            SELECT f.id
+            WHERE f.release_date >= ? AND f.release_date < ?
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
+            """;
+    private static final String GET_POPULAR = """
+            SELECT f.*
             FROM film f
-            LEFT JOIN "like" l ON f.id = l.film_id
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
             """;
+    // Фильмы режиссёра постранично. Следующая страница начинается после фильма-курсора c
+    // по тому же ключу сортировки, что и у всей выборки
     private static final String GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_YEAR = """
             SELECT f.id FROM film f
             INNER JOIN film_director fd ON fd.film_id = f.id
             WHERE fd.director_id = ?
-            ORDER BY EXTRACT(YEAR FROM f.release_date)
+            ORDER BY EXTRACT(YEAR FROM f.release_date), f.id
+            LIMIT ?
+            """;
+    private static final String GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_YEAR_AFTER = """
+            SELECT f.id FROM film f
+            INNER JOIN film_director fd ON fd.film_id = f.id
+            INNER JOIN film c ON c.id = ?
+            WHERE fd.director_id = ?
+            AND (EXTRACT(YEAR FROM f.release_date) > EXTRACT(YEAR FROM c.release_date)
+                OR (EXTRACT(YEAR FROM f.release_date) = EXTRACT(YEAR FROM c.release_date) AND f.id > c.id))
+            ORDER BY EXTRACT(YEAR FROM f.release_date), f.id
+            LIMIT ?
             """;
     private static final String GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_LIKES = """
             SELECT f.id FROM film f
             INNER JOIN film_director fd ON fd.film_id = f.id
-            LEFT JOIN "like" l ON l.film_id = f.id
             WHERE fd.director_id = ?
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
             """;
+    private static final String GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_LIKES_AFTER = """
+            SELECT f.id FROM film f
+            INNER JOIN film_director fd ON fd.film_id = f.id
+            INNER JOIN film c ON c.id = ?
+            WHERE fd.director_id = ?
+            AND (f.like_count < c.like_count OR (f.like_count = c.like_count AND f.id > c.id))
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
+            """;
+    // Поиск постранично в порядке популярности. Следующая страница начинается после фильма-курсора c
+    // по ключу (like_count, id), даже если сам курсор в выдачу не входит. Без курсора c не находится
     private static final String SEARCH_FILMS_BY_TITLE = """
             SELECT f.id FROM film f
-            LEFT JOIN "like" l ON l.film_id = f.id
+            LEFT JOIN film c ON c.id = ?
             WHERE LOWER(f.name) LIKE LOWER(?)
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
+            AND (c.id IS NULL OR f.like_count < c.like_count OR (f.like_count = c.like_count AND f.id > c.id))
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
             """;
     private static final String SEARCH_FILMS_BY_DIRECTOR = """
             SELECT f.id FROM film f
-            INNER JOIN film_director fd ON fd.film_id = f.id
-            INNER JOIN director d ON d.id = fd.director_id
-            LEFT JOIN "like" l ON l.film_id = f.id
-            WHERE LOWER(d.name) LIKE LOWER(?)
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
+            LEFT JOIN film c ON c.id = ?
+            WHERE EXISTS (
+                SELECT 1 FROM film_director fd
+                INNER JOIN director d ON d.id = fd.director_id
+                WHERE fd.film_id = f.id AND LOWER(d.name) LIKE LOWER(?)
+            )
+            AND (c.id IS NULL OR f.like_count < c.like_count OR (f.like_count = c.like_count AND f.id > c.id))
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
             """;
     private static final String SEARCH_FILMS_BY_TITLE_AND_DIRECTOR = """
             SELECT f.id FROM film f
-            LEFT JOIN film_director fd ON fd.film_id = f.id
-            LEFT JOIN director d ON d.id = fd.director_id
-            LEFT JOIN "like" l ON l.film_id = f.id
-            WHERE LOWER(f.name) LIKE LOWER(?) OR LOWER(d.name) LIKE LOWER(?)
-            GROUP BY f.id
-            ORDER BY COUNT(l.user_id) DESC
+            LEFT JOIN film c ON c.id = ?
+            WHERE (LOWER(f.name) LIKE LOWER(?)
+                OR EXISTS (
+                    SELECT 1 FROM film_director fd
+                    INNER JOIN director d ON d.id = fd.director_id
+                    WHERE fd.film_id = f.id AND LOWER(d.name) LIKE LOWER(?)
+                ))
+            AND (c.id IS NULL OR f.like_count < c.like_count OR (f.like_count = c.like_count AND f.id > c.id))
+            ORDER BY f.like_count DESC, f.id ASC
+            LIMIT ?
             """;
     private static final String GET_COMMON_FILMS = """
-            SELECT f.id, f.name, f.release_date, f.description, f.duration
-            FROM film as f
-            JOIN (SELECT count(user_id) as user_likes, film_id from "like"
-            GROUP BY film_id) as l on f.id = l.film_id
+            SELECT f.*
+            FROM film f
             WHERE f.id IN (
             SELECT film_id FROM "like"
             WHERE user_id = ?
             INTERSECT
             SELECT film_id FROM "like"
-            WHERE user_id = ?) ORDER BY l.user_likes desc
+            WHERE user_id = ?)
+            ORDER BY f.like_count DESC, f.id ASC
             """;
 
     private static final String INSERT_FILM = """
@@ -141,6 +185,10 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
     private static final String INSERT_LIKE = """
             INSERT INTO "like" (user_id, film_id) VALUES (?, ?)
             """;
+    private static final String INSERT_LIKE_IF_ABSENT = """
+            INSERT INTO "like" (user_id, film_id)
+            SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM "like" WHERE user_id = ? AND film_id = ?)
+            """;
     private static final String INSERT_FILM_GENRE = """
             INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)
             """;
@@ -153,9 +201,23 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
 
     private static final String UPDATE_FILM = """
             UPDATE film
-            SET name = ?, description = ?, release_date = ?, duration = ?
+            SET name = ?, description = ?, release_date = ?, duration = ?, like_count = ?
             WHERE id = ?
             """;
+    private static final String INCREMENT_LIKE_COUNT = """
+            UPDATE film SET like_count = like_count + 1 WHERE id = ?
+            """;
+    private static final String ADD_TO_LIKE_COUNT = """
+            UPDATE film SET like_count = like_count + ? WHERE id = ?
+            """;
+    private static final String DECREMENT_LIKE_COUNT = """
+            UPDATE film SET like_count = like_count - 1 WHERE id = ?
+            """;
+    private static final String REBUILD_LIKE_COUNT = """
+            UPDATE film f
+            SET like_count = (SELECT COUNT(*) FROM "like" l WHERE l.film_id = f.id)
+            WHERE like_count <> (SELECT COUNT(*) FROM "like" l WHERE l.film_id = f.id)
+            """;
 
     private static final String DELETE_FILM_BY_ID = """
             DELETE FROM film WHERE id = ?
@@ -191,77 +253,104 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
             DELETE FROM film_rating
             """;
 
-    public FilmRepository(JdbcTemplate jdbc, RowMapper<Film> mapper) {
-        super(jdbc, mapper);
+    private final FilmHydrator hydrator;
+    private final GenreStorage genreStorage;
+    private final RatingMpaStorage ratingMpaStorage;
+    private final DirectorStorage directorStorage;
+    private final IdSet ids = new IdSet("film", () -> jdbc.queryForList(GET_ALL_IDS, Long.class));
+
+    public FilmRepository(JdbcTemplate jdbc, RowMapper<Film> mapper, IdAllocator idAllocator,
+                          FilmHydrator hydrator, GenreStorage genreStorage,
+                          RatingMpaStorage ratingMpaStorage, DirectorStorage directorStorage) {
+        super(jdbc, mapper, idAllocator);
+        this.hydrator = hydrator;
+        this.genreStorage = genreStorage;
+        this.ratingMpaStorage = ratingMpaStorage;
+        this.directorStorage = directorStorage;
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return ids.contains(id);
     }
 
     @Override
     public Film get(Long id) {
-        return findOne(GET_ONE, id);
+        Film film = findOne(GET_ONE, id);
+
+        if (film != null) {
+            hydrator.hydrateOne(film);
+        }
+
+        return film;
     }
 
     @Override
     public Collection<Film> getAll() {
-        return findMany(GET_ALL);
+        return hydrator.hydrate(findMany(GET_ALL));
     }
 
+    // Порция гидрируется целиком, так что на связанные данные уходит постоянное число запросов на порцию
     @Override
-    public Collection<Film> getPopular(Long limit, Long genreId, Year year) {
-        Collection<Long> popularIds;
-        Collection<Film> result = new ArrayList<>();
+    public void stream(long afterId, Long limit, Set<FilmField> fields, Consumer<Film> consumer) {
+        Consumer<List<Film>> chunkConsumer = chunk -> hydrator.hydrate(chunk, fields).forEach(consumer);
+        streamPages(GET_PAGE, Film::getId, afterId, limit, STREAM_CHUNK_SIZE, chunkConsumer);
+    }
 
+    @Override
+    public Collection<Film> getPopular(Long limit, Long genreId, Year year) {
         String sql;
         List<Object> params = new ArrayList<>();
 
         if (genreId == null && year == null) {
-            sql = GET_POPULAR_ID;
+            sql = GET_POPULAR;
         } else if (genreId == null) {
-            sql = GET_POPULAR_ID_BY_YEAR;
-            params.add(year.getValue());
+            sql = GET_POPULAR_BY_YEAR;
+            addYearRange(params, year);
         } else if (year == null) {
-            sql = GET_POPULAR_ID_BY_GENRE;
+            sql = GET_POPULAR_BY_GENRE;
             params.add(genreId);
         } else {
-            sql = GET_POPULAR_ID_BY_GENRE_AND_YEAR;
+            sql = GET_POPULAR_BY_GENRE_AND_YEAR;
             params.add(genreId);
-            params.add(year.getValue());
-        }
-
-        if (limit != null) {
-            sql += " LIMIT ?";
-            params.add(limit);
+            addYearRange(params, year);
         }
 
-        popularIds = jdbc.queryForList(sql, Long.class, params.toArray());
+        params.add(limit != null ? limit : DEFAULT_POPULAR_COUNT);
 
-        for (Long id : popularIds) {
-            result.add(get(id));
-        }
-
-        return result;
+        // один запрос на ранжирование и базовые поля фильмов, и ещё постоянное число запросов на связанные данные
+        return hydrator.hydrate(findMany(sql, params.toArray()));
     }
 
     @Override
-    public Collection<Film> getByDirector(Long directorId, String sortBy) {
-        Collection<Long> filmIds = switch (sortBy) {
-            case "year" -> jdbc.queryForList(GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_YEAR, Long.class, directorId);
-            case "likes" -> jdbc.queryForList(GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_LIKES, Long.class, directorId);
-            default -> new ArrayList<>();
+    public Collection<Film> getByDirector(Long directorId, String sortBy, Long afterId, long limit,
+                                          Set<FilmField> fields) {
+        String sql = switch (sortBy) {
+            case "year" -> afterId == null
+                    ? GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_YEAR
+                    : GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_YEAR_AFTER;
+            case "likes" -> afterId == null
+                    ? GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_LIKES
+                    : GET_FILMS_BY_DIRECTOR_ID_ORDER_BY_LIKES_AFTER;
+            default -> null;
             // default недостижим, отлавливаются иные методы в Service
         };
-
-        Collection<Film> result = new ArrayList<>();
-
-        for (Long id : filmIds) {
-            result.add(get(id));
+        if (sql == null) {
+            return new ArrayList<>();
         }
 
-        return result;
+        Collection<Long> filmIds = afterId == null
+                ? jdbc.queryForList(sql, Long.class, directorId, limit)
+                : jdbc.queryForList(sql, Long.class, afterId, directorId, limit);
+
+        return getByIds(filmIds, fields);
     }
 
     @Override
     @Transactional
     public Film add(Film film) {
+        // связи проверяются по справочникам до выделения id, чтобы некорректный запрос не расходовал id
+        validateReferences(film);
         film.setId(nextIdByTable("film"));
 
         insert(INSERT_FILM,
@@ -272,58 +361,139 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
                 film.getDuration());
 
         if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            Set<Long> genreIds = new HashSet<>(jdbc.queryForList(GET_ALL_GENRE_ID, Long.class));
             List<Object[]> batchArgs = new ArrayList<>();
-
             for (Genre genre : film.getGenres()) {
-                if (genreIds.contains(genre.getId())) {
-                    batchArgs.add(new Object[]{film.getId(), genre.getId()});
-                } else {
-                    log.info("Попытка добавить несуществующий жанр с id: {}", genre.getId());
-                    throw new NotFoundException("Не найден жанр с id: " + genre.getId());
-                }
+                batchArgs.add(new Object[]{film.getId(), genre.getId()});
             }
-
             jdbc.batchUpdate(INSERT_FILM_GENRE, batchArgs);
         }
 
         if (film.getDirectors() != null && !film.getDirectors().isEmpty()) {
-            Set<Long> directorIds = new HashSet<>(jdbc.queryForList(GET_ALL_DIRECTOR_ID, Long.class));
             List<Object[]> batchArgs = new ArrayList<>();
+            for (Director director : film.getDirectors()) {
+                batchArgs.add(new Object[]{film.getId(), director.getId()});
+            }
+            jdbc.batchUpdate(INSERT_FILM_DIRECTOR, batchArgs);
+        }
 
+        if (film.getRatingMpa() != null) {
+            insert(INSERT_FILM_RATING, film.getId(), film.getRatingMpa().getId());
+        }
+
+        ids.add(film.getId());
+        return get(film.getId());
+    }
+
+    // Пачка фильмов, уже проверенных по справочникам, пишется одной транзакцией:
+    // по одному пакетному INSERT на каждую таблицу, без перечитывания фильмов из БД
+    @Override
+    @Transactional
+    public List<Film> addAll(List<Film> films) {
+        List<Object[]> filmArgs = new ArrayList<>(films.size());
+        List<Object[]> genreArgs = new ArrayList<>();
+        List<Object[]> directorArgs = new ArrayList<>();
+        List<Object[]> ratingArgs = new ArrayList<>(films.size());
+
+        for (Film film : films) {
+            film.setId(nextIdByTable("film"));
+            filmArgs.add(new Object[]{film.getId(), film.getName(), film.getDescription(),
+                    film.getReleaseDate(), film.getDuration()});
+            if (film.getGenres() != null) {
+                for (Genre genre : film.getGenres()) {
+                    genreArgs.add(new Object[]{film.getId(), genre.getId()});
+                }
+            }
+            if (film.getDirectors() != null) {
+                for (Director director : film.getDirectors()) {
+                    directorArgs.add(new Object[]{film.getId(), director.getId()});
+                }
+            }
+            if (film.getRatingMpa() != null) {
+                ratingArgs.add(new Object[]{film.getId(), film.getRatingMpa().getId()});
+            }
+        }
+
+        jdbc.batchUpdate(INSERT_FILM, filmArgs);
+        jdbc.batchUpdate(INSERT_FILM_GENRE, genreArgs);
+        jdbc.batchUpdate(INSERT_FILM_DIRECTOR, directorArgs);
+        jdbc.batchUpdate(INSERT_FILM_RATING, ratingArgs);
+
+        films.forEach(film -> ids.add(film.getId()));
+        return films;
+    }
+
+    private void validateReferences(Film film) {
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                if (genreStorage.get(genre.getId()) == null) {
+                    log.info("Попытка добавить несуществующий жанр с id: {}", genre.getId());
+                    throw new NotFoundException("Не найден жанр с id: " + genre.getId());
+                }
+            }
+        }
+
+        if (film.getDirectors() != null) {
             for (Director director : film.getDirectors()) {
-                if (directorIds.contains(director.getId())) {
-                    batchArgs.add(new Object[]{film.getId(), director.getId()});
-                } else {
+                if (directorStorage.get(director.getId()) == null) {
                     log.info("Попытка добавить несуществующего режиссёра с id: {}", director.getId());
                     throw new NotFoundException("Не найден режиссёр с id: " + director.getId());
                 }
             }
+        }
 
-            jdbc.batchUpdate(INSERT_FILM_DIRECTOR, batchArgs);
+        if (film.getRatingMpa() != null && ratingMpaStorage.get(film.getRatingMpa().getId()) == null) {
+            log.info("Попытка добавить несуществующий рейтинг с id: {}", film.getRatingMpa().getId());
+            throw new NotFoundException("Не найден рейтинг с id: " + film.getRatingMpa().getId());
         }
+    }
 
-        if (film.getRatingMpa() != null) {
-            Set<Long> ratingIds = new HashSet<>(jdbc.queryForList(GET_ALL_RATING_ID, Long.class));
-            if (ratingIds.contains(film.getRatingMpa().getId())) {
-                insert(INSERT_FILM_RATING, film.getId(), film.getRatingMpa().getId());
-            } else {
-                log.info("Попытка добавить несуществующий рейтинг с id: {}", film.getRatingMpa().getId());
-                throw new NotFoundException("Не найден рейтинг с id: " + film.getRatingMpa().getId());
+    // Лайки, которых ещё нет, вставляются пакетами, счётчики увеличиваются одним UPDATE на фильм.
+    // Фильмы и пользователи должны существовать, иначе откатывается весь вызов
+    @Override
+    @Transactional
+    public List<FilmLike> addLikes(Collection<FilmLike> likes) {
+        int[][] counts = jdbc.batchUpdate(INSERT_LIKE_IF_ABSENT, likes, LIKE_BATCH_SIZE, (ps, like) -> {
+            ps.setLong(1, like.userId());
+            ps.setLong(2, like.filmId());
+            ps.setLong(3, like.userId());
+            ps.setLong(4, like.filmId());
+        });
+
+        List<FilmLike> added = new ArrayList<>();
+        Map<Long, Long> deltas = new HashMap<>();
+        Iterator<FilmLike> iterator = likes.iterator();
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                FilmLike like = iterator.next();
+                if (count > 0) {
+                    added.add(like);
+                    deltas.merge(like.filmId(), 1L, Long::sum);
+                }
             }
         }
 
-        return get(film.getId());
+        List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+        deltas.forEach((filmId, delta) -> batchArgs.add(new Object[]{delta, filmId}));
+        jdbc.batchUpdate(ADD_TO_LIKE_COUNT, batchArgs);
+
+        log.debug("Добавлено лайков: {} из {}, фильмов: {}", added.size(), likes.size(), deltas.size());
+        return added;
     }
 
     @Override
-    public Set<Long> addLike(Long filmId, Long userId) {
+    @Transactional
+    public boolean addLike(Long filmId, Long userId) {
         try {
-        insert(INSERT_LIKE, userId, filmId);
+            // счётчик увеличивается лишь тогда, когда лайк действительно добавился
+            if (jdbc.update(INSERT_LIKE_IF_ABSENT, userId, filmId, userId, filmId) > 0) {
+                update(INCREMENT_LIKE_COUNT, filmId);
+                return true;
+            }
         } catch (DataIntegrityViolationException e) {
-            log.warn("Пользователь уже лайкнул этот фильм");
+            log.debug("Лайк не добавлен: {}", e.getMessage());
         }
-        return get(filmId).getLikes();
+        log.warn("Пользователь уже лайкнул этот фильм");
+        return false;
     }
 
     @Override
@@ -342,6 +512,7 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
                 film.getDescription(),
                 film.getReleaseDate(),
                 film.getDuration(),
+                likes.size(),
                 film.getId());
 
         // Остальные записи в смежных таблицах будто проще удалить и внести новые.
@@ -394,6 +565,7 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
             throw new InternalServerException("Произошла ошибка при удалении фильма с id: " + id);
         }
 
+        ids.remove(id);
         return true;
     }
 
@@ -408,10 +580,12 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
             throw new InternalServerException("Произошла ошибка при очистке таблицы фильмов");
         }
 
+        ids.clear();
         return true;
     }
 
     @Override
+    @Transactional
     public boolean deleteLike(Long filmId, Long userId) {
         boolean deleteLike = jdbc.update(DELETE_LIKE_BY_USER_ID_AND_FILM_ID, userId, filmId) > 0;
 
@@ -421,28 +595,40 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
                     " от пользователя с id: " + userId);
         }
 
+        update(DECREMENT_LIKE_COUNT, filmId);
         return true;
     }
 
     @Override
-    public Collection<Film> search(String query, String by) {
+    @Transactional
+    public int rebuildLikeCounts() {
+        int repaired = jdbc.update(REBUILD_LIKE_COUNT);
+        log.info("Пересчитан like_count, исправлено записей в таблице film: {}", repaired);
+        return repaired;
+    }
+
+    @Override
+    public Collection<Film> search(String query, String by, Long afterId, Long limit, Set<FilmField> fields) {
         String searchQuery = "%" + query + "%";
+        long rows = limit != null ? limit : Long.MAX_VALUE;
         Collection<Long> filmIds = new ArrayList<>();
 
         if (by.contains("title") && by.contains("director")) {
-            filmIds = jdbc.queryForList(SEARCH_FILMS_BY_TITLE_AND_DIRECTOR, Long.class, searchQuery, searchQuery);
+            filmIds = jdbc.queryForList(SEARCH_FILMS_BY_TITLE_AND_DIRECTOR, Long.class,
+                    afterId, searchQuery, searchQuery, rows);
         } else if (by.contains("title")) {
-            filmIds = jdbc.queryForList(SEARCH_FILMS_BY_TITLE, Long.class, searchQuery);
+            filmIds = jdbc.queryForList(SEARCH_FILMS_BY_TITLE, Long.class, afterId, searchQuery, rows);
         } else if (by.contains("director")) {
-            filmIds = jdbc.queryForList(SEARCH_FILMS_BY_DIRECTOR, Long.class, searchQuery);
+            filmIds = jdbc.queryForList(SEARCH_FILMS_BY_DIRECTOR, Long.class, afterId, searchQuery, rows);
         }
 
-        Collection<Film> result = new ArrayList<>();
-        for (Long id : filmIds) {
-            result.add(get(id));
-        }
+        return getByIds(filmIds, fields);
+    }
 
-        return result;
+    // Условие по диапазону дат, а не EXTRACT(YEAR ...), чтобы БД могла использовать индекс по release_date
+    private void addYearRange(List<Object> params, Year year) {
+        params.add(year.atDay(1));
+        params.add(year.plusYears(1).atDay(1));
     }
 
     private void deleteRelated(Optional<Long> filmId) {
@@ -475,17 +661,37 @@ public class FilmRepository extends BaseRepository<Film> implements FilmStorage
 
     @Override
     public List<Film> getCommonFilms(Long userId, Long friendId) {
-        return jdbc.query(GET_COMMON_FILMS, mapper, userId, friendId);
+        return hydrator.hydrate(findMany(GET_COMMON_FILMS, userId, friendId));
     }
 
     @Override
     public List<Film> getByListIds(Set<Long> ids) {
-        String placeholders = ids.stream()
-                .map(id -> "?")
-                .collect(Collectors.joining(", "));
+        return getByIds(ids);
+    }
+
+    // Базовые записи читаются одним запросом, связанные данные - пачкой через FilmHydrator
+    @Override
+    public List<Film> getByIds(Collection<Long> ids) {
+        return getByIds(ids, EnumSet.allOf(FilmField.class));
+    }
+
+    @Override
+    public List<Film> getByIds(Collection<Long> ids, Set<FilmField> fields) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Film> filmsById = findMany(GET_BY_IDS, (Object) ids.toArray(new Long[0])).stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+
+        List<Film> result = new ArrayList<>(filmsById.size());
+        for (Long id : ids) {
+            Film film = filmsById.get(id);
+            if (film != null) {
+                result.add(film);
+            }
+        }
 
-        String sql = "SELECT id, name, description, release_date, duration " +
-                "FROM film WHERE id IN (" + placeholders + ")";
-        return findMany(sql, ids.toArray());
+        return hydrator.hydrate(result, fields);
     }
 }
@@ -9,7 +9,10 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
@@ -17,6 +20,9 @@ public class GenreRepository extends BaseRepository<Genre> implements GenreStora
     private static final String GET_ONE = """
             SELECT * FROM genre WHERE id = ?
             """;
+    private static final String GET_BY_IDS = """
+            SELECT * FROM genre WHERE id = ANY(?)
+            """;
     private static final String GET_ALL = """
             SELECT * FROM genre
             """;
@@ -45,8 +51,8 @@ public class GenreRepository extends BaseRepository<Genre> implements GenreStora
             """;
 
 
-    public GenreRepository(JdbcTemplate jdbc, RowMapper<Genre> mapper) {
-        super(jdbc, mapper);
+    public GenreRepository(JdbcTemplate jdbc, RowMapper<Genre> mapper, IdAllocator idAllocator) {
+        super(jdbc, mapper, idAllocator);
     }
 
     @Override
@@ -54,6 +60,12 @@ public class GenreRepository extends BaseRepository<Genre> implements GenreStora
         return findOne(GET_ONE, id);
     }
 
+    @Override
+    public Map<Long, Genre> getByIds(Collection<Long> ids) {
+        return findMany(GET_BY_IDS, (Object) ids.toArray(new Long[0])).stream()
+                .collect(Collectors.toMap(Genre::getId, Function.identity()));
+    }
+
     @Override
     public Collection<Genre> getAll() {
         return findMany(GET_ALL);
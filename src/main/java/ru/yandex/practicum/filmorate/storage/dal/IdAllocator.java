@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Выдаёт id для новых записей без SELECT MAX(id) перед каждой вставкой.
+// Из последовательности в БД резервируется сразу блок id, дальше они раздаются из памяти через AtomicLong,
+// блокировка берётся только при резервировании следующего блока
+@Slf4j
+@Component
+public class IdAllocator {
+    // таблица -> имя таблицы в SQL и последовательность, из которой берутся её id
+    // не забывать добавлять новые таблицы сюда и последовательности в schema.sql!
+    private static final Map<String, String[]> SEQUENCES = Map.of(
+            "film", new String[]{"film", "film_id_seq"},
+            "user", new String[]{"\"user\"", "user_id_seq"},
+            "genre", new String[]{"genre", "genre_id_seq"},
+            "rating", new String[]{"rating", "rating_id_seq"},
+            "director", new String[]{"director", "director_id_seq"}
+    );
+
+    private static final String GET_SEQUENCE_STATE = """
+            SELECT base_value, increment
+            FROM information_schema.sequences
+            WHERE sequence_schema = CURRENT_SCHEMA AND sequence_name = ?
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final int blockSize;
+    private final Map<String, AtomicReference<IdBlock>> blocks = new ConcurrentHashMap<>();
+
+    public IdAllocator(JdbcTemplate jdbc, @Value("${filmorate.id-allocator.block-size:50}") int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Размер блока id должен быть положительным: " + blockSize);
+        }
+        this.jdbc = jdbc;
+        this.blockSize = blockSize;
+        alignSequences();
+    }
+
+    public long next(String tableName) {
+        String[] sequence = getSequence(tableName);
+        AtomicReference<IdBlock> current = blocks.computeIfAbsent(tableName,
+                name -> new AtomicReference<>(IdBlock.EMPTY));
+
+        while (true) {
+            IdBlock block = current.get();
+            long id = block.next().getAndIncrement();
+            if (id < block.end()) {
+                return id;
+            }
+
+            // блок закончился: новый резервирует только один поток, остальные дождутся и возьмут id из него
+            synchronized (current) {
+                if (current.get() == block) {
+                    current.set(reserveBlock(sequence));
+                }
+            }
+        }
+    }
+
+    // Записи могли быть добавлены мимо последовательности (SQL-скрипты, старые версии приложения),
+    // поэтому последовательности выставляются за максимальный id в таблице и получают шаг, равный размеру блока:
+    // одно значение последовательности = один блок.
+    // Выполняется один раз при создании бина - после schema.sql и до того, как Tomcat начнёт принимать запросы
+    // (ApplicationReadyEvent приходит уже после этого). ALTER SEQUENCE в H2 фиксирует текущую транзакцию,
+    // поэтому внутри транзакций add/addAll его выполнять нельзя.
+    // Последовательность, которая уже обогнала таблицу, не перезапускается: её значения могли быть зарезервированы
+    // другим экземпляром приложения, и RESTART выдал бы их повторно. Размер блока у всех экземпляров должен совпадать
+    private void alignSequences() {
+        for (String[] sequence : SEQUENCES.values()) {
+            long maxId = Optional.ofNullable(jdbc.queryForObject("SELECT MAX(id) FROM " + sequence[0], Long.class))
+                    .orElse(0L);
+            Map<String, Object> state = jdbc.queryForMap(GET_SEQUENCE_STATE, sequence[1].toUpperCase());
+            long nextValue = ((Number) state.get("base_value")).longValue();
+            long increment = ((Number) state.get("increment")).longValue();
+
+            if (nextValue <= maxId) {
+                jdbc.execute("ALTER SEQUENCE " + sequence[1] +
+                        " RESTART WITH " + (maxId + 1) + " INCREMENT BY " + blockSize);
+                log.info("Последовательность {} перезапущена с {}", sequence[1], maxId + 1);
+            } else if (increment != blockSize) {
+                jdbc.execute("ALTER SEQUENCE " + sequence[1] + " INCREMENT BY " + blockSize);
+            }
+        }
+    }
+
+    private IdBlock reserveBlock(String[] sequence) {
+        Long start = jdbc.queryForObject("SELECT NEXT VALUE FOR " + sequence[1], Long.class);
+        if (start == null) {
+            log.info("Последовательность {} не вернула значение", sequence[1]);
+            throw new InternalServerException("Не удалось получить id для таблицы " + sequence[0]);
+        }
+
+        log.debug("Зарезервирован блок id [{}, {}) из последовательности {}", start, start + blockSize, sequence[1]);
+        return new IdBlock(new AtomicLong(start), start + blockSize);
+    }
+
+    private String[] getSequence(String tableName) {
+        String[] sequence = SEQUENCES.get(tableName);
+        if (sequence == null) {
+            log.info("Ошибка при получении ID из таблицы {}", tableName);
+            throw new InternalServerException("Внутренняя ошибка сервера. " +
+                    "Можно получить ID только у следующих таблиц: " + String.join(", ", SEQUENCES.keySet()));
+        }
+        return sequence;
+    }
+
+    private record IdBlock(AtomicLong next, long end) {
+        private static final IdBlock EMPTY = new IdBlock(new AtomicLong(0), 0);
+    }
+}
@@ -9,7 +9,10 @@ import ru.yandex.practicum.filmorate.model.RatingMpa;
 import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
@@ -17,6 +20,9 @@ public class RatingMpaRepository extends BaseRepository<RatingMpa> implements Ra
     private static final String GET_ONE = """
             SELECT * FROM rating WHERE id = ?
             """;
+    private static final String GET_BY_IDS = """
+            SELECT * FROM rating WHERE id = ANY(?)
+            """;
     private static final String GET_ALL = """
             SELECT * FROM rating
             """;
@@ -45,8 +51,8 @@ public class RatingMpaRepository extends BaseRepository<RatingMpa> implements Ra
             """;
 
 
-    public RatingMpaRepository(JdbcTemplate jdbc, RowMapper<RatingMpa> mapper) {
-        super(jdbc, mapper);
+    public RatingMpaRepository(JdbcTemplate jdbc, RowMapper<RatingMpa> mapper, IdAllocator idAllocator) {
+        super(jdbc, mapper, idAllocator);
     }
 
     @Override
@@ -54,6 +60,12 @@ public class RatingMpaRepository extends BaseRepository<RatingMpa> implements Ra
         return findOne(GET_ONE, id);
     }
 
+    @Override
+    public Map<Long, RatingMpa> getByIds(Collection<Long> ids) {
+        return findMany(GET_BY_IDS, (Object) ids.toArray(new Long[0])).stream()
+                .collect(Collectors.toMap(RatingMpa::getId, Function.identity()));
+    }
+
     @Override
     public Collection<RatingMpa> getAll() {
         return findMany(GET_ALL);
@@ -61,8 +73,7 @@ public class RatingMpaRepository extends BaseRepository<RatingMpa> implements Ra
 
     @Override
     public RatingMpa add(RatingMpa rating) {
-        rating.setId(nextIdByTable("genre"));
-
+        rating.setId(nextIdByTable("rating"));
 
         insert(INSERT_RATING,
                 rating.getId(),
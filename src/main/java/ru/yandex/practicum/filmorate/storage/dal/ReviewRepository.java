@@ -10,8 +10,10 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.memory.IdSet;
 
 import java.sql.PreparedStatement;
+import java.util.ArrayList;
 import java.util.List;
 
 @Repository
@@ -28,50 +30,98 @@ public class ReviewRepository extends BaseRepository<Review> implements ReviewSt
     private static final String GET_ALL = """
                     SELECT review_id, content, is_positive, user_id, film_id, useful FROM reviews""";
 
+    // Лучшие отзывы: сортировка и ограничение выполняются в БД по индексу (film_id, useful DESC, review_id).
+    // Следующая страница начинается после последнего отзыва предыдущей (useful, review_id)
+    private static final String GET_TOP = """
+                    SELECT review_id, content, is_positive, user_id, film_id, useful FROM reviews \
+                    ORDER BY useful DESC, review_id ASC \
+                    LIMIT ?""";
+
+    private static final String GET_TOP_AFTER = """
+                    SELECT review_id, content, is_positive, user_id, film_id, useful FROM reviews \
+                    WHERE useful < ? OR (useful = ? AND review_id > ?) \
+                    ORDER BY useful DESC, review_id ASC \
+                    LIMIT ?""";
+
+    private static final String GET_TOP_BY_FILM_ID = """
+                    SELECT review_id, content, is_positive, user_id, film_id, useful FROM reviews \
+                    WHERE film_id = ? \
+                    ORDER BY useful DESC, review_id ASC \
+                    LIMIT ?""";
+
+    private static final String GET_TOP_BY_FILM_ID_AFTER = """
+                    SELECT review_id, content, is_positive, user_id, film_id, useful FROM reviews \
+                    WHERE film_id = ? AND (useful < ? OR (useful = ? AND review_id > ?)) \
+                    ORDER BY useful DESC, review_id ASC \
+                    LIMIT ?""";
+
+    private static final String GET_ALL_IDS = """
+                    SELECT review_id FROM reviews""";
+
     private static final String INSERT_REVIEW = """
                     INSERT INTO reviews (content, is_positive, user_id, film_id, useful) \
                     VALUES (?, ?, ?, ?, ?)""";
 
     private static final String UPDATE_REVIEW = """
-                    UPDATE reviews SET content = ?, is_positive = ?, useful = ? \
+                    UPDATE reviews SET content = ?, is_positive = ? \
                     WHERE review_id = ?""";
 
     private static final String DELETE_BY_ID =
             "DELETE FROM reviews WHERE review_id = ?";
 
-    private static final String COUNT_LIKES = """
-                    SELECT COUNT(*) FROM review_likes WHERE review_id = ? AND is_like = true""";
-
-    private static final String COUNT_DISLIKES = """
-                    SELECT COUNT(*) FROM review_likes WHERE review_id = ? AND is_like = false""";
-
-    private static final String HAS_LIKE = """
-                    SELECT EXISTS(SELECT 1 FROM review_likes \
-                    WHERE review_id = ? AND user_id = ? AND is_like = true)""";
-
-    private static final String HAS_DISLIKE = """
-                    SELECT EXISTS(SELECT 1 FROM review_likes \
-                    WHERE review_id = ? AND user_id = ? AND is_like = false)""";
-
-    private static final String ADD_LIKE =
-            "INSERT INTO review_likes (review_id, user_id, is_like) VALUES (?, ?, true)";
+    // Оценка записывается и полезность сдвигается одним запросом. Вложенный MERGE меняет строку review_likes,
+    // а OLD TABLE возвращает прежнюю оценку пользователя, если она была:
+    // лайк - новый +1, повторный 0, лайк на дизлайк снимает дизлайк (+1);
+    // дизлайк - новый -1, повторный 0, дизлайк на лайк заменяет лайк (-2).
+    // Совпадающая оценка перезаписывается тем же значением, чтобы OLD TABLE была пустой только у новой оценки.
+    // UPDATE блокирует строку отзыва, поэтому одновременные оценки одного отзыва не теряют друг друга
+    private static final String VOTE = """
+                    UPDATE reviews SET useful = useful + COALESCE(( \
+                        SELECT CASE WHEN prev.is_like = ? THEN 0 WHEN ? THEN 1 ELSE -2 END \
+                        FROM OLD TABLE ( \
+                            MERGE INTO review_likes l \
+                            USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BOOLEAN))) \
+                                v(review_id, user_id, is_like) \
+                            ON l.review_id = v.review_id AND l.user_id = v.user_id \
+                            WHEN MATCHED AND l.is_like <> v.is_like AND v.is_like THEN DELETE \
+                            WHEN MATCHED THEN UPDATE SET is_like = v.is_like \
+                            WHEN NOT MATCHED THEN INSERT (review_id, user_id, is_like) \
+                                VALUES (v.review_id, v.user_id, v.is_like)) prev), ?) \
+                    WHERE review_id = ?""";
 
-    private static final String ADD_DISLIKE =
-            "INSERT INTO review_likes (review_id, user_id, is_like) VALUES (?, ?, false)";
+    private static final String DELETE_VOTE =
+            "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_like = ?";
 
-    private static final String DELETE_LIKE =
-            "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_like = true";
+    private static final String ADD_TO_USEFUL =
+            "UPDATE reviews SET useful = useful + ? WHERE review_id = ?";
 
-    private static final String DELETE_DISLIKE =
-            "DELETE FROM review_likes WHERE review_id = ? AND user_id = ? AND is_like = false";
+    private static final String REBUILD_USEFUL = """
+                    UPDATE reviews r SET useful = ( \
+                        SELECT COALESCE(SUM(CASE WHEN l.is_like THEN 1 ELSE -1 END), 0) \
+                        FROM review_likes l WHERE l.review_id = r.review_id) \
+                    WHERE useful <> ( \
+                        SELECT COALESCE(SUM(CASE WHEN l.is_like THEN 1 ELSE -1 END), 0) \
+                        FROM review_likes l WHERE l.review_id = r.review_id)""";
 
     private static final String DELETE_ALL_LIKES =
             "DELETE FROM review_likes WHERE review_id = ?";
 
+    private final IdSet ids = new IdSet("reviews", () -> jdbc.queryForList(GET_ALL_IDS, Long.class));
+
     public ReviewRepository(JdbcTemplate jdbc, RowMapper<Review> mapper) {
         super(jdbc, mapper);
     }
 
+    @Override
+    public boolean exists(Long reviewId) {
+        return ids.contains(reviewId);
+    }
+
+    @Override
+    public void reloadIds() {
+        ids.reload();
+    }
+
     @Override
     public Review get(Long reviewId) {
         return findOne(GET_BY_ID, reviewId);
@@ -87,6 +137,28 @@ public class ReviewRepository extends BaseRepository<Review> implements ReviewSt
         return findMany(GET_BY_FILM_ID, filmId);
     }
 
+    @Override
+    public List<Review> getTop(Long filmId, int count, Integer afterUseful, Long afterId) {
+        String sql;
+        List<Object> params = new ArrayList<>();
+
+        if (filmId != null) {
+            params.add(filmId);
+        }
+
+        if (afterUseful == null) {
+            sql = filmId == null ? GET_TOP : GET_TOP_BY_FILM_ID;
+        } else {
+            sql = filmId == null ? GET_TOP_AFTER : GET_TOP_BY_FILM_ID_AFTER;
+            params.add(afterUseful);
+            params.add(afterUseful);
+            params.add(afterId);
+        }
+
+        params.add(count);
+        return findMany(sql, params.toArray());
+    }
+
     @Override
     @Transactional
     public Review add(Review review) {
@@ -106,19 +178,18 @@ public class ReviewRepository extends BaseRepository<Review> implements ReviewSt
         }, keyHolder);
 
         review.setReviewId(keyHolder.getKey().longValue());
+        ids.add(review.getReviewId());
         return review;
     }
 
     @Override
     @Transactional
     public Review update(Review review) {
-        Review oldReview = get(review.getReviewId());
-
+        // useful меняется только оценками, здесь он не перезаписывается
         update(UPDATE_REVIEW,
                 review.getContent(),
                 review.getIsPositive(),
-                review.getUseful(),
-                review.getUserId());
+                review.getReviewId());
 
         return get(review.getReviewId());
     }
@@ -134,54 +205,32 @@ public class ReviewRepository extends BaseRepository<Review> implements ReviewSt
             throw new InternalServerException("Произошла ошибка при удалении записи из таблицы reviews с id: " + reviewId);
         }
 
+        ids.remove(reviewId);
         return true;
     }
 
-    @Override
-    public int countLikes(Long reviewId) {
-        return jdbc.queryForObject(COUNT_LIKES, Integer.class, reviewId);
-    }
-
-    @Override
-    public int countDislikes(Long reviewId) {
-        return jdbc.queryForObject(COUNT_DISLIKES, Integer.class, reviewId);
-    }
-
-    @Override
-    public boolean hasLike(Long reviewId, Long userId) {
-        return Boolean.TRUE.equals(jdbc.queryForObject(
-                HAS_LIKE, Boolean.class, reviewId, userId));
-    }
-
-    @Override
-    public boolean hasDislike(Long reviewId, Long userId) {
-        return Boolean.TRUE.equals(jdbc.queryForObject(
-                HAS_DISLIKE, Boolean.class, reviewId, userId));
-    }
-
-    @Override
-    @Transactional
-    public void addLike(Long reviewId, Long userId) {
-        insert(ADD_LIKE, reviewId, userId);
-    }
-
     @Override
     @Transactional
-    public void addDislike(Long reviewId, Long userId) {
-        insert(ADD_DISLIKE, reviewId, userId);
-
+    public void vote(Long reviewId, Long userId, boolean isLike) {
+        jdbc.update(VOTE, isLike, isLike, reviewId, userId, isLike, voteValue(isLike), reviewId);
     }
 
     @Override
     @Transactional
-    public void deleteLike(Long reviewId, Long userId) {
-        jdbc.update(DELETE_LIKE, reviewId, userId);
+    public boolean deleteVote(Long reviewId, Long userId, boolean isLike) {
+        if (jdbc.update(DELETE_VOTE, reviewId, userId, isLike) == 0) {
+            return false;
+        }
+        jdbc.update(ADD_TO_USEFUL, -voteValue(isLike), reviewId);
+        return true;
     }
 
     @Override
     @Transactional
-    public void deleteDislike(Long reviewId, Long userId) {
-        jdbc.update(DELETE_DISLIKE, reviewId, userId);
+    public int rebuildUseful() {
+        int repaired = jdbc.update(REBUILD_USEFUL);
+        log.info("Пересчитан useful, исправлено записей в таблице reviews: {}", repaired);
+        return repaired;
     }
 
     @Override
@@ -189,4 +238,8 @@ public class ReviewRepository extends BaseRepository<Review> implements ReviewSt
     public void deleteAllLikesByReviewId(Long reviewId) {
         jdbc.update(DELETE_ALL_LIKES, reviewId);
     }
+
+    private static int voteValue(boolean isLike) {
+        return isLike ? 1 : -1;
+    }
 }
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FriendshipStatus;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Догружает друзей и статусы дружбы сразу для всей пачки пользователей одним запросом.
+// Текст запроса не меняется, id передаются массивом, поэтому H2 может переиспользовать план запроса
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserHydrator {
+    private static final String GET_FRIEND_STATUSES_BY_USER_IDS = """
+            SELECT f.user_id AS user_id, f.friend_id AS friend_id, fs.name AS status
+            FROM "friend" f
+            INNER JOIN friendship_status fs ON f.friendship_status_id = fs.id
+            WHERE f.user_id = ANY(?)
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    public List<User> hydrate(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : users) {
+            user.setFriendStatusMap(new HashMap<>());
+            usersById.put(user.getId(), user);
+        }
+
+        jdbc.query(GET_FRIEND_STATUSES_BY_USER_IDS, rs -> {
+            usersById.get(rs.getLong("user_id")).getFriendStatusMap()
+                    .put(rs.getLong("friend_id"), FriendshipStatus.valueOf(rs.getString("status")));
+        }, (Object) usersById.keySet().toArray(new Long[0]));
+
+        log.debug("Догружены друзья для {} пользователей", usersById.size());
+        return users;
+    }
+}
@@ -10,17 +10,17 @@ import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.model.FriendshipStatus;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
-import ru.yandex.practicum.filmorate.storage.dal.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.IdSet;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -29,9 +29,20 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
     private static final String GET_USER_BY_ID = """
             SELECT * FROM "user" WHERE id = ?
             """;
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     private static final String GET_ALL = """
             SELECT * FROM "user"
             """;
+    private static final String GET_PAGE = """
+            SELECT * FROM "user"
+            WHERE id > ?
+            ORDER BY id
+            FETCH FIRST ? ROWS ONLY
+            """;
+    private static final String GET_ALL_IDS = """
+            SELECT id FROM "user"
+            """;
     private static final String GET_FRIENDSHIP_STATUS_ID_BY_NAME = """
             SELECT id FROM friendship_status
             WHERE name IN (?)
@@ -53,8 +64,15 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
                 SELECT friend_id FROM "friend" WHERE user_id = ?
             ) common ON u.id = common.friend_id
             """;
-    private static final String GET_ALL_FRIENDS_BY_USER_ID = """
-            SELECT friend_id FROM "friend" WHERE user_id = ?
+    private static final String GET_FRIENDS_BY_USER_ID = """
+            SELECT u.* FROM "user" u
+            INNER JOIN "friend" f ON u.id = f.friend_id
+            WHERE f.user_id = ?
+            ORDER BY u.id ASC
+            OFFSET ? ROWS
+            """;
+    private static final String GET_FRIENDS_PAGE_BY_USER_ID = GET_FRIENDS_BY_USER_ID + """
+            FETCH NEXT ? ROWS ONLY
             """;
 
     private static final String GET_SIMILAR_USER_LIKES = """
@@ -95,6 +113,13 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
     private static final String DELETE_ALL_USERS = """
             DELETE FROM "user"
             """;
+    private static final String DECREMENT_LIKE_COUNT_BY_USER_ID = """
+            UPDATE film SET like_count = like_count - 1
+            WHERE id IN (SELECT film_id FROM "like" WHERE user_id = ?)
+            """;
+    private static final String RESET_ALL_LIKE_COUNTS = """
+            UPDATE film SET like_count = 0
+            """;
     private static final String DELETE_LIKE_BY_ID = """
             DELETE FROM "like" WHERE user_id = ?
             """;
@@ -113,24 +138,48 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
             """;
 
 
-    public UserRepository(JdbcTemplate jdbc, RowMapper<User> mapper) {
-        super(jdbc, mapper);
+    private final UserHydrator hydrator;
+    private final IdSet ids = new IdSet("user", () -> jdbc.queryForList(GET_ALL_IDS, Long.class));
+
+    public UserRepository(JdbcTemplate jdbc, RowMapper<User> mapper, IdAllocator idAllocator,
+                          UserHydrator hydrator) {
+        super(jdbc, mapper, idAllocator);
+        this.hydrator = hydrator;
     }
 
     @Override
     public User get(Long id) {
-        return findOne(GET_USER_BY_ID, id);
+        User user = findOne(GET_USER_BY_ID, id);
+
+        if (user != null) {
+            hydrator.hydrate(List.of(user));
+        }
+
+        return user;
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return ids.contains(id);
     }
 
     @Override
     public Collection<User> getAll() {
-        return findMany(GET_ALL);
+        return hydrator.hydrate(findMany(GET_ALL));
+    }
+
+    // Друзья догружаются одним запросом на порцию, а без withFriendMaps не догружаются вовсе
+    @Override
+    public void stream(long afterId, Long limit, boolean withFriendMaps, Consumer<User> consumer) {
+        Consumer<List<User>> chunkConsumer = withFriendMaps
+                ? chunk -> hydrator.hydrate(chunk).forEach(consumer)
+                : chunk -> chunk.forEach(consumer);
+        streamPages(GET_PAGE, User::getId, afterId, limit, STREAM_CHUNK_SIZE, chunkConsumer);
     }
 
     @Override
     public Collection<User> getCommonFriends(Long id, Long otherId) {
-        UserRowMapper userRowMapper = new UserRowMapper(jdbc);
-        return jdbc.query(GET_COMMON_FRIENDS_BETWEEN_USERS, userRowMapper, id, otherId);
+        return hydrator.hydrate(findMany(GET_COMMON_FRIENDS_BETWEEN_USERS, id, otherId));
     }
 
     @Override
@@ -145,15 +194,20 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
         );
     }
 
+    @Override
     public Collection<User> getAllFriends(Long id) {
-        Set<Long> friendIds = new HashSet<>(jdbc.queryForList(GET_ALL_FRIENDS_BY_USER_ID, Long.class, id));
-        Collection<User> result = new ArrayList<>();
+        return getFriends(id, 0, null, true);
+    }
 
-        for (Long friendId : friendIds) {
-            result.add(get(friendId));
-        }
+    // Друзья достаются одним JOIN-запросом, их собственные списки друзей - ещё одним запросом на всю страницу.
+    // Без withFriendMaps второй запрос не выполняется, а friendStatusMap у друзей остаётся null
+    @Override
+    public Collection<User> getFriends(Long id, long offset, Long limit, boolean withFriendMaps) {
+        List<User> friends = limit == null
+                ? findMany(GET_FRIENDS_BY_USER_ID, id, offset)
+                : findMany(GET_FRIENDS_PAGE_BY_USER_ID, id, offset, limit);
 
-        return result;
+        return withFriendMaps ? hydrator.hydrate(friends) : friends;
     }
 
     @Override
@@ -170,6 +224,7 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
                 user.getName(),
                 user.getBirthday());
 
+        ids.add(user.getId());
         return get(user.getId());
     }
 
@@ -255,6 +310,7 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
             throw new InternalServerException("Произошла ошибка при удалении записи из таблицы user с id: " + id);
         }
 
+        ids.remove(id);
         return true;
     }
 
@@ -269,6 +325,7 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
             throw new InternalServerException("Произошла ошибка при очистке таблицы user");
         }
 
+        ids.clear();
         return true;
     }
 
@@ -288,11 +345,13 @@ public class UserRepository extends BaseRepository<User> implements UserStorage
 
     private void deleteRelated(Optional<Long> userId) {
         if (userId.isPresent()) {
+            jdbc.update(DECREMENT_LIKE_COUNT_BY_USER_ID, userId.get());
             jdbc.update(DELETE_LIKE_BY_ID, userId.get());
             log.info("Были удалены все лайки из таблицы like от пользователя с id: {}", userId.get());
             jdbc.update(DELETE_ALL_FRIENDS_BY_USER_ID, userId.get());
             log.info("Были удалены все друзья из таблицы friend у пользователя с id: {}", userId.get());
         } else {
+            jdbc.update(RESET_ALL_LIKE_COUNTS);
             jdbc.update(DELETE_ALL_LIKES);
             log.info("Была очищена таблица like");
             jdbc.update(DELETE_ALL_FRIENDS);
@@ -10,13 +10,13 @@ import ru.yandex.practicum.filmorate.model.Film;
 public class MapperConfig {
 
     @Bean
-    public RowMapper<Film> filmRowMapper(JdbcTemplate jdbc) {
-        return new FilmRowMapper(jdbc);
+    public RowMapper<Film> filmRowMapper() {
+        return new FilmRowMapper();
     }
 
     @Bean
-    public UserRowMapper userRowMapper(JdbcTemplate jdbc) {
-        return new UserRowMapper(jdbc);
+    public UserRowMapper userRowMapper() {
+        return new UserRowMapper();
     }
 
     @Bean
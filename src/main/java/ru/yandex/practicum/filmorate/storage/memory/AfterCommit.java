@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Изменения структур в памяти должны быть видны только после коммита транзакции, которая их вызвала:
+// откатившаяся транзакция не должна оставить следов. Вне транзакции действие выполняется сразу
+final class AfterCommit {
+    private AfterCommit() {
+    }
+
+    static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Долгие действия, которые нельзя выполнять, пока транзакция держит соединение с БД.
+// afterCommit и afterCompletion вызываются до того, как менеджер транзакций вернёт соединение в пул,
+// поэтому ожидание в них занимает соединение. Такие действия откладываются до выхода из внешнего
+// @Transactional метода: совет стоит снаружи транзакционного, и к этому моменту соединение уже освобождено.
+// Вне транзакции действие выполняется сразу
+@Slf4j
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AfterTransaction {
+    private static final ThreadLocal<List<Runnable>> DEFERRED = new ThreadLocal<>();
+
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        List<Runnable> deferred = DEFERRED.get();
+        if (deferred == null) {
+            deferred = new ArrayList<>();
+            DEFERRED.set(deferred);
+        }
+        deferred.add(action);
+    }
+
+    @Around("@annotation(org.springframework.transaction.annotation.Transactional)"
+            + " || @within(org.springframework.transaction.annotation.Transactional)")
+    public Object runDeferred(ProceedingJoinPoint joinPoint) throws Throwable {
+        try {
+            return joinPoint.proceed();
+        } finally {
+            // вложенный вызов внутри чужой транзакции ничего не выполняет, это сделает внешний
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                List<Runnable> deferred = DEFERRED.get();
+                DEFERRED.remove();
+                if (deferred != null) {
+                    log.debug("Соединение транзакции освобождено, отложенных действий: {}", deferred.size());
+                    for (Runnable action : deferred) {
+                        try {
+                            action.run();
+                        } catch (RuntimeException e) {
+                            log.warn("Ошибка в действии после транзакции", e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
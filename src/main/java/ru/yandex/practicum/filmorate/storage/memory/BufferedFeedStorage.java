@@ -0,0 +1,267 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.UserEvent;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.dal.FeedRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Запись ленты событий через буфер в памяти. События после коммита ставятся в ограниченную очередь,
+// отдельный поток пишет их в БД пакетами: как только набралось batchSize событий
+// или прошло flushInterval с момента первого события пакета.
+// Режимы записи:
+// SYNC - как раньше, отдельный INSERT в транзакции запроса, буфер не используется;
+// GROUP (по умолчанию) - запрос ждёт, пока пакет с его событием запишется, несколько запросов делят
+// одну запись в БД. flushInterval тут не ждётся: пакет - всё, что накопилось, пока писался предыдущий,
+// так что одиночный запрос не теряет время на ожидание соседей.
+// Внутри транзакции ожидание откладывается до освобождения её соединения (AfterTransaction);
+// ASYNC - запрос не ждёт записи: клиент получает ответ раньше, чем событие попадёт в БД, и при аварийной
+// остановке события за последний flushInterval теряются. Включается только явно
+// Если очередь заполнена, запрос ждёт освобождения места до offerTimeout, а затем пишет событие сам.
+// Перед чтением ленты буфер сбрасывается, поэтому пользователь всегда видит свои события.
+// Записанные события раскладываются по лентам друзей
+@Slf4j
+@Primary
+@Component
+public class BufferedFeedStorage implements FeedStorage {
+    private static final long FLUSH_WAIT_SECONDS = 10;
+
+    private final FeedRepository delegate;
+    private final FriendTimelineStore timelines;
+    private final WriteMode mode;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long offerTimeoutNanos;
+    private final BlockingQueue<PendingEvent> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public BufferedFeedStorage(FeedRepository delegate,
+                               FriendTimelineStore timelines,
+                               @Value("${filmorate.feed.write-mode:GROUP}") WriteMode mode,
+                               @Value("${filmorate.feed.buffer-capacity:10000}") int capacity,
+                               @Value("${filmorate.feed.batch-size:500}") int batchSize,
+                               @Value("${filmorate.feed.flush-interval:PT0.05S}") Duration flushInterval,
+                               @Value("${filmorate.feed.offer-timeout:PT1S}") Duration offerTimeout) {
+        if (batchSize < 1 || capacity < batchSize) {
+            throw new IllegalArgumentException("Некорректные размеры буфера ленты: capacity=" + capacity
+                    + ", batch-size=" + batchSize);
+        }
+        this.delegate = delegate;
+        this.timelines = timelines;
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        if (mode == WriteMode.SYNC) {
+            writer = null;
+            running = false;
+        } else {
+            writer = Thread.ofPlatform().name("feed-writer").daemon().start(this::runWriter);
+        }
+        log.info("Запись ленты событий: {}, пакет: {}, интервал: {}", mode, batchSize, flushInterval);
+    }
+
+    @Override
+    public List<UserEvent> getFeed(Long id, long afterEventId, Long limit) {
+        flush();
+        return delegate.getFeed(id, afterEventId, limit);
+    }
+
+    @Override
+    public void addEventToFeed(Long userId, EventType eventType, Operation operation, Long entityId) {
+        UserEvent event = UserEvent.builder()
+                .userId(userId)
+                .eventType(eventType)
+                .operation(operation)
+                .entityId(entityId)
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        if (!running) {
+            delegate.addEventsToFeed(List.of(event));
+            AfterCommit.run(() -> timelines.fanOut(List.of(event)));
+            return;
+        }
+        AfterCommit.run(() -> enqueue(event));
+    }
+
+    @Override
+    public void addEventsToFeed(List<UserEvent> events) {
+        delegate.addEventsToFeed(events);
+        AfterCommit.run(() -> timelines.fanOut(events));
+    }
+
+    // Ждёт записи всех событий, поставленных в очередь до вызова
+    public void flush() {
+        if (!running) {
+            return;
+        }
+
+        PendingEvent marker = new PendingEvent(null, new CompletableFuture<>());
+        try {
+            if (queue.offer(marker, offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                await(marker);
+            } else {
+                log.warn("Буфер ленты событий переполнен, сброс перед чтением пропущен");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Новые события пишутся напрямую, поток записи дописывает очередь и завершается
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(FLUSH_WAIT_SECONDS));
+
+        List<PendingEvent> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        write(rest);
+        log.info("Буфер ленты событий закрыт");
+    }
+
+    private void enqueue(UserEvent event) {
+        PendingEvent pending = new PendingEvent(event, new CompletableFuture<>());
+        try {
+            if (running && queue.offer(pending, offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                if (mode == WriteMode.GROUP) {
+                    AfterTransaction.run(() -> await(pending));
+                }
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.debug("Событие ленты пишется в обход буфера: {}", event);
+        write(List.of(pending));
+    }
+
+    private void runWriter() {
+        List<PendingEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingEvent first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                if (mode == WriteMode.GROUP) {
+                    queue.drainTo(batch, batchSize - 1);
+                } else {
+                    collectBatch(batch, System.nanoTime() + flushIntervalNanos);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ошибка в потоке записи ленты событий", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Добирает пакет до batchSize или до истечения интервала. Маркер сброса завершает пакет сразу
+    private void collectBatch(List<PendingEvent> batch, long deadline) throws InterruptedException {
+        while (batch.size() < batchSize && !batch.getLast().isMarker()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+
+            PendingEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(List<PendingEvent> batch) {
+        List<UserEvent> events = new ArrayList<>(batch.size());
+        for (PendingEvent pending : batch) {
+            if (!pending.isMarker()) {
+                events.add(pending.event());
+            }
+        }
+
+        try {
+            if (!events.isEmpty()) {
+                timelines.fanOut(writeEvents(events));
+            }
+        } finally {
+            for (PendingEvent pending : batch) {
+                pending.written().complete(null);
+            }
+        }
+    }
+
+    // Пакет может упасть из-за одного события, например пользователь был удалён, пока событие ждало в очереди.
+    // Тогда события пишутся по одному, и теряются только те, которые записать нельзя
+    private List<UserEvent> writeEvents(List<UserEvent> events) {
+        try {
+            delegate.addEventsToFeed(events);
+            return events;
+        } catch (DataAccessException e) {
+            log.warn("Не удалось записать пакет событий ленты ({} шт.), пишем по одному", events.size(), e);
+            List<UserEvent> written = new ArrayList<>(events.size());
+            for (UserEvent event : events) {
+                try {
+                    delegate.addEventsToFeed(List.of(event));
+                    written.add(event);
+                } catch (DataAccessException ex) {
+                    log.warn("Событие ленты не записано: {}", event, ex);
+                }
+            }
+            return written;
+        }
+    }
+
+    private static void await(PendingEvent pending) {
+        try {
+            pending.written().get(FLUSH_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Не дождались записи буфера ленты событий", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public enum WriteMode {
+        SYNC, GROUP, ASYNC
+    }
+
+    // event == null - маркер сброса буфера
+    private record PendingEvent(UserEvent event, CompletableFuture<Void> written) {
+        private boolean isMarker() {
+            return event == null;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// Поисковый индекс по названиям фильмов и именам режиссёров, постоянно хранится в памяти.
+// Текст разбивается на слова, приводится к нижнему регистру, ё заменяется на е, а у латиницы
+// и других некириллических букв убирается диакритика (café -> cafe),
+// слова лежат в отсортированных словарях, поэтому поиск по началу слова - это обход поддиапазона.
+// Фильм подходит, если каждое слово запроса является началом какого-то слова в названии
+// или в имени одного из его режиссёров
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmSearchIndex {
+    private static final String GET_FILM_NAMES = """
+            SELECT id, name FROM film
+            """;
+    private static final String GET_DIRECTOR_NAMES = """
+            SELECT id, name FROM director
+            """;
+    private static final String GET_FILM_DIRECTORS = """
+            SELECT film_id, director_id FROM film_director
+            """;
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // диакритические знаки после некириллической буквы: "й" и "ё" в русском - отдельные буквы
+    private static final Pattern COMBINING_MARKS = Pattern.compile("(?<=[^\\p{IsCyrillic}\\p{M}])\\p{M}+");
+
+    private final JdbcTemplate jdbc;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Возвращает id подходящих фильмов без упорядочивания, ранжирование делается снаружи.
+    // Пустой запрос подходит ко всем фильмам, как и LIKE '%%' в БД. Запрос только из знаков препинания
+    // не даёт ни одного слова и не подходит ни к чему, иначе "!!!" вернул бы все фильмы
+    public Set<Long> search(String query, boolean byTitle, boolean byDirector) {
+        boolean matchEverything = query.isEmpty();
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() && !matchEverything) {
+            return Set.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<Long> result = new HashSet<>();
+
+            if (byTitle) {
+                result.addAll(matchEverything
+                        ? state.titleTokensByFilm.keySet()
+                        : matchAll(state.filmsByTitleToken, tokens));
+            }
+
+            if (byDirector) {
+                Collection<Long> directorIds = matchEverything
+                        ? state.filmsByDirector.keySet()
+                        : matchAll(state.directorsByToken, tokens);
+                for (Long directorId : directorIds) {
+                    result.addAll(state.filmsByDirector.getOrDefault(directorId, Set.of()));
+                }
+            }
+
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Film film) {
+        List<String> titleTokens = tokenize(film.getName());
+
+        lock.writeLock().lock();
+        try {
+            state.removeFilm(film.getId());
+            state.addFilm(film.getId(), titleTokens);
+
+            if (film.getDirectors() != null) {
+                for (Director director : film.getDirectors()) {
+                    if (director.getName() != null) {
+                        state.putDirector(director.getId(), tokenize(director.getName()));
+                    }
+                    state.linkDirector(film.getId(), director.getId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            state.removeFilm(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Режиссёры остаются в индексе, их имена нужны для фильмов, которые будут добавлены позже
+    public void clearFilms() {
+        lock.writeLock().lock();
+        try {
+            for (Long filmId : new ArrayList<>(state.titleTokensByFilm.keySet())) {
+                state.removeFilm(filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(Director director) {
+        List<String> tokens = tokenize(director.getName());
+
+        lock.writeLock().lock();
+        try {
+            state.putDirector(director.getId(), tokens);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(Long directorId) {
+        lock.writeLock().lock();
+        try {
+            state.removeDirector(directorId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clearDirectors() {
+        lock.writeLock().lock();
+        try {
+            for (Long directorId : new ArrayList<>(state.tokensByDirector.keySet())) {
+                state.removeDirector(directorId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Новое состояние собирается без блокировки, подменяется целиком под блокировкой записи
+    public void rebuild() {
+        State rebuilt = new State();
+        jdbc.query(GET_FILM_NAMES, rs -> {
+            rebuilt.addFilm(rs.getLong("id"), tokenize(rs.getString("name")));
+        });
+        jdbc.query(GET_DIRECTOR_NAMES, rs -> {
+            rebuilt.putDirector(rs.getLong("id"), tokenize(rs.getString("name")));
+        });
+        jdbc.query(GET_FILM_DIRECTORS, rs -> {
+            rebuilt.linkDirector(rs.getLong("film_id"), rs.getLong("director_id"));
+        });
+
+        lock.writeLock().lock();
+        try {
+            state = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        ready = true;
+        log.info("Поисковый индекс фильмов перестроен, фильмов: {}, режиссёров: {}",
+                rebuilt.titleTokensByFilm.size(), rebuilt.tokensByDirector.size());
+    }
+
+    // Одинаково применяется и к индексируемому тексту, и к запросу
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        // NFD отделяет диакритику от буквы, у некириллических букв она вырезается, а NFC собирает обратно
+        // оставшиеся кириллические буквы ("й"). "ё" ищется как "е", поэтому заменяется явно
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        normalized = Normalizer.normalize(normalized, Normalizer.Form.NFD);
+        normalized = COMBINING_MARKS.matcher(normalized).replaceAll("");
+        normalized = Normalizer.normalize(normalized, Normalizer.Form.NFC);
+
+        for (String token : TOKEN_SEPARATOR.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // id, у которых каждое слово запроса совпадает с началом хотя бы одного слова
+    private static Set<Long> matchAll(NavigableMap<String, Set<Long>> index, List<String> tokens) {
+        Set<Long> result = null;
+        for (String token : tokens) {
+            Set<Long> matched = new HashSet<>();
+            for (Set<Long> ids : index.subMap(token, true, token + Character.MAX_VALUE, false).values()) {
+                matched.addAll(ids);
+            }
+
+            if (result == null) {
+                result = matched;
+            } else {
+                result.retainAll(matched);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result == null ? Set.of() : result;
+    }
+
+    private static class State {
+        private final NavigableMap<String, Set<Long>> filmsByTitleToken = new TreeMap<>();
+        private final Map<Long, List<String>> titleTokensByFilm = new HashMap<>();
+        private final NavigableMap<String, Set<Long>> directorsByToken = new TreeMap<>();
+        private final Map<Long, List<String>> tokensByDirector = new HashMap<>();
+        private final Map<Long, Set<Long>> filmsByDirector = new HashMap<>();
+        private final Map<Long, Set<Long>> directorsByFilm = new HashMap<>();
+
+        private void addFilm(Long filmId, List<String> tokens) {
+            titleTokensByFilm.put(filmId, tokens);
+            for (String token : tokens) {
+                filmsByTitleToken.computeIfAbsent(token, t -> new HashSet<>()).add(filmId);
+            }
+        }
+
+        private void removeFilm(Long filmId) {
+            removeTokens(filmsByTitleToken, titleTokensByFilm.remove(filmId), filmId);
+
+            Set<Long> directorIds = directorsByFilm.remove(filmId);
+            if (directorIds != null) {
+                for (Long directorId : directorIds) {
+                    removeFromBucket(filmsByDirector, directorId, filmId);
+                }
+            }
+        }
+
+        private void putDirector(Long directorId, List<String> tokens) {
+            removeTokens(directorsByToken, tokensByDirector.put(directorId, tokens), directorId);
+            for (String token : tokens) {
+                directorsByToken.computeIfAbsent(token, t -> new HashSet<>()).add(directorId);
+            }
+        }
+
+        private void removeDirector(Long directorId) {
+            removeTokens(directorsByToken, tokensByDirector.remove(directorId), directorId);
+
+            Set<Long> filmIds = filmsByDirector.remove(directorId);
+            if (filmIds != null) {
+                for (Long filmId : filmIds) {
+                    removeFromBucket(directorsByFilm, filmId, directorId);
+                }
+            }
+        }
+
+        private void linkDirector(Long filmId, Long directorId) {
+            filmsByDirector.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+            directorsByFilm.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+        }
+
+        private void removeTokens(Map<String, Set<Long>> index, List<String> tokens, Long id) {
+            if (tokens != null) {
+                for (String token : tokens) {
+                    removeFromBucket(index, token, id);
+                }
+            }
+        }
+
+        private <K> void removeFromBucket(Map<K, Set<Long>> buckets, K key, Long id) {
+            Set<Long> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.UserEvent;
+import ru.yandex.practicum.filmorate.storage.dal.mapper.EventRowMapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Ленты событий друзей. Событие после записи в БД раскладывается по лентам всех, у кого автор в друзьях
+// (fan-out on write), поэтому чтение ленты - это копирование её начала.
+// Ленты держатся только для пользователей, которые их читали: не больше maxUsers лент по maxSize событий,
+// давно не читавшиеся вытесняются. Всё, что не помещается в память, читается из БД:
+// лента, которой нет в памяти, загружается запросом, а запрос глубже maxSize идёт сразу в БД.
+// События пользователя, у которого больше fanOutLimit подписчиков, не раскладываются -
+// читатели подмешивают их при чтении (fan-out on read)
+@Slf4j
+@Component
+public class FriendTimelineStore {
+    private static final String GET_FRIEND_EDGES = """
+            SELECT user_id, friend_id FROM "friend"
+            """;
+    private static final String GET_FRIEND_IDS = """
+            SELECT friend_id FROM "friend" WHERE user_id = ?
+            """;
+    private static final String GET_TIMELINE = """
+            SELECT e.event_id, e.user_id, e.event_type, e.operation, e.entity_id, e.timestamp
+            FROM user_event e
+            INNER JOIN "friend" f ON f.friend_id = e.user_id
+            WHERE f.user_id = ?
+            ORDER BY e.event_id DESC
+            LIMIT ?
+            """;
+    private static final String GET_EVENTS_BY_USER_IDS = """
+            SELECT event_id, user_id, event_type, operation, entity_id, timestamp
+            FROM user_event
+            WHERE user_id = ANY(?)
+            ORDER BY event_id DESC
+            LIMIT ?
+            """;
+
+    // от новых к старым
+    private static final Comparator<UserEvent> NEWEST_FIRST =
+            Comparator.comparing(UserEvent::getEventId).reversed();
+
+    private final JdbcTemplate jdbc;
+    private final EventRowMapper mapper;
+    private final int maxSize;
+    private final int fanOutLimit;
+    private final int maxUsers;
+
+    // все структуры защищены this
+    private final Map<Long, Set<Long>> friendsByUser = new HashMap<>();
+    private final Map<Long, Set<Long>> followersByUser = new HashMap<>();
+    private final Map<Long, TreeSet<UserEvent>> timelines;
+    private volatile boolean ready = false;
+
+    public FriendTimelineStore(JdbcTemplate jdbc, EventRowMapper mapper,
+                               @Value("${filmorate.timeline.max-size:200}") int maxSize,
+                               @Value("${filmorate.timeline.fan-out-limit:1000}") int fanOutLimit,
+                               @Value("${filmorate.timeline.max-users:10000}") int maxUsers) {
+        this.jdbc = jdbc;
+        this.mapper = mapper;
+        this.maxSize = maxSize;
+        this.fanOutLimit = fanOutLimit;
+        this.maxUsers = maxUsers;
+        this.timelines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TreeSet<UserEvent>> eldest) {
+                return size() > FriendTimelineStore.this.maxUsers;
+            }
+        };
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // События друзей пользователя от новых к старым
+    public List<UserEvent> get(Long userId, int limit) {
+        if (!ready || limit > maxSize) {
+            return jdbc.query(GET_TIMELINE, mapper, userId, limit);
+        }
+
+        TreeSet<UserEvent> top = null;
+        List<Long> popularFriends = new ArrayList<>();
+        synchronized (this) {
+            TreeSet<UserEvent> timeline = timelines.get(userId);
+            if (timeline != null) {
+                top = copyTop(timeline, limit);
+            } else {
+                // пустая лента ставится до чтения из БД: события, записанные во время загрузки,
+                // попадут в неё через fanOut, а повторы с результатом запроса отсеются по event_id
+                timelines.put(userId, new TreeSet<>(NEWEST_FIRST));
+            }
+
+            for (Long friendId : friendsByUser.getOrDefault(userId, Set.of())) {
+                if (isPopular(friendId)) {
+                    popularFriends.add(friendId);
+                }
+            }
+        }
+
+        if (top == null) {
+            top = load(userId, limit);
+        }
+
+        if (!popularFriends.isEmpty()) {
+            top.addAll(jdbc.query(GET_EVENTS_BY_USER_IDS, mapper, popularFriends.toArray(Long[]::new), limit));
+        }
+
+        return new ArrayList<>(copyTop(top, limit));
+    }
+
+    // Вызывается после записи событий в БД, у событий уже есть event_id
+    public void fanOut(Collection<UserEvent> events) {
+        if (!ready) {
+            return;
+        }
+
+        synchronized (this) {
+            for (UserEvent event : events) {
+                if (event.getEventId() == null) {
+                    continue;
+                }
+
+                Set<Long> followers = followersByUser.getOrDefault(event.getUserId(), Set.of());
+                if (followers.size() > fanOutLimit) {
+                    continue;
+                }
+
+                for (Long followerId : followers) {
+                    TreeSet<UserEvent> timeline = timelines.get(followerId);
+                    if (timeline != null) {
+                        add(timeline, List.of(event));
+                    }
+                }
+            }
+        }
+    }
+
+    // Лента пользователя, у которого изменился список друзей, загрузится заново при следующем чтении
+    public void addFriend(Long userId, Long friendId) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                friendsByUser.computeIfAbsent(userId, id -> new HashSet<>()).add(friendId);
+                followersByUser.computeIfAbsent(friendId, id -> new HashSet<>()).add(userId);
+                timelines.remove(userId);
+            }
+        });
+    }
+
+    public void removeFriend(Long userId, Long friendId) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                unlink(userId, friendId);
+                timelines.remove(userId);
+            }
+        });
+    }
+
+    // Список друзей пользователя был перезаписан целиком
+    public void reloadFriends(Long userId) {
+        AfterCommit.run(() -> {
+            List<Long> friendIds = jdbc.queryForList(GET_FRIEND_IDS, Long.class, userId);
+            synchronized (this) {
+                for (Long friendId : new ArrayList<>(friendsByUser.getOrDefault(userId, Set.of()))) {
+                    unlink(userId, friendId);
+                }
+                for (Long friendId : friendIds) {
+                    friendsByUser.computeIfAbsent(userId, id -> new HashSet<>()).add(friendId);
+                    followersByUser.computeIfAbsent(friendId, id -> new HashSet<>()).add(userId);
+                }
+                timelines.remove(userId);
+            }
+        });
+    }
+
+    // События удалённого пользователя удалились каскадно и могли остаться в любых лентах
+    public void removeUser(Long userId) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                for (Long friendId : new ArrayList<>(friendsByUser.getOrDefault(userId, Set.of()))) {
+                    unlink(userId, friendId);
+                }
+                for (Long followerId : new ArrayList<>(followersByUser.getOrDefault(userId, Set.of()))) {
+                    unlink(followerId, userId);
+                }
+                timelines.clear();
+            }
+        });
+    }
+
+    public void clear() {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                friendsByUser.clear();
+                followersByUser.clear();
+                timelines.clear();
+            }
+        });
+    }
+
+    // Граф дружбы читается целиком, ленты будут загружаться по мере чтения
+    public void rebuild() {
+        Map<Long, Set<Long>> friends = new HashMap<>();
+        Map<Long, Set<Long>> followers = new HashMap<>();
+        jdbc.query(GET_FRIEND_EDGES, rs -> {
+            long userId = rs.getLong("user_id");
+            long friendId = rs.getLong("friend_id");
+            friends.computeIfAbsent(userId, id -> new HashSet<>()).add(friendId);
+            followers.computeIfAbsent(friendId, id -> new HashSet<>()).add(userId);
+        });
+
+        synchronized (this) {
+            friendsByUser.clear();
+            friendsByUser.putAll(friends);
+            followersByUser.clear();
+            followersByUser.putAll(followers);
+            timelines.clear();
+        }
+
+        ready = true;
+        log.info("Граф дружбы для лент событий загружен, пользователей с друзьями: {}", friends.size());
+    }
+
+    private TreeSet<UserEvent> load(Long userId, int limit) {
+        List<UserEvent> loaded = jdbc.query(GET_TIMELINE, mapper, userId, maxSize);
+        synchronized (this) {
+            TreeSet<UserEvent> timeline = timelines.get(userId);
+            if (timeline == null) {
+                // ленту успели сбросить, пока шла загрузка - результат отдаётся, но не сохраняется
+                timeline = new TreeSet<>(NEWEST_FIRST);
+                add(timeline, loaded);
+                return timeline;
+            }
+            add(timeline, loaded);
+            return copyTop(timeline, limit);
+        }
+    }
+
+    private void add(TreeSet<UserEvent> timeline, Collection<UserEvent> events) {
+        timeline.addAll(events);
+        while (timeline.size() > maxSize) {
+            timeline.pollLast();
+        }
+    }
+
+    private boolean isPopular(Long userId) {
+        return followersByUser.getOrDefault(userId, Set.of()).size() > fanOutLimit;
+    }
+
+    private void unlink(Long userId, Long friendId) {
+        removeFromBucket(friendsByUser, userId, friendId);
+        removeFromBucket(followersByUser, friendId, userId);
+    }
+
+    private static void removeFromBucket(Map<Long, Set<Long>> buckets, Long key, Long id) {
+        Set<Long> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(id);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    private static TreeSet<UserEvent> copyTop(TreeSet<UserEvent> timeline, int limit) {
+        TreeSet<UserEvent> copy = new TreeSet<>(NEWEST_FIRST);
+        Iterator<UserEvent> iterator = timeline.iterator();
+        while (iterator.hasNext() && copy.size() < limit) {
+            copy.add(iterator.next());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Множество существующих id таблицы в виде битовой карты на long[]: один бит на id,
+// миллион последовательных id занимает ~122 КБ, проверка - одно обращение к массиву.
+// Загружается из БД при первом обращении. Изменения применяются только после коммита транзакции,
+// чтобы откатившаяся вставка не оставила в множестве id несуществующей записи.
+// Пока идёт загрузка, изменения ждут её окончания и применяются поверх загруженного снимка
+@Slf4j
+public class IdSet {
+    private final String name;
+    private final Supplier<List<Long>> loader;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] bits = new long[0];
+    private volatile boolean loaded = false;
+
+    public IdSet(String name, Supplier<List<Long>> loader) {
+        this.name = name;
+        this.loader = loader;
+    }
+
+    public boolean contains(Long id) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return test(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(Long id) {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                int word = wordIndex(id);
+                if (word >= bits.length) {
+                    bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+                }
+                bits[word] |= 1L << id;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void remove(Long id) {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                if (id >= 0 && (id >>> 6) < bits.length) {
+                    bits[(int) (id >>> 6)] &= ~(1L << id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void clear() {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                bits = new long[0];
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // Записи удалились в обход репозитория (каскадное удаление в БД) - при следующей проверке множество
+    // будет загружено заново
+    public void reload() {
+        AfterCommit.run(() -> loaded = false);
+    }
+
+    private boolean test(Long id) {
+        // сравнение в long: приведение больших id к int дало бы номер чужого слова
+        if (id == null || id < 0 || (id >>> 6) >= bits.length) {
+            return false;
+        }
+        return (bits[(int) (id >>> 6)] & (1L << id)) != 0;
+    }
+
+    // Битовая карта растёт до максимального id, поэтому id, не помещающиеся в массив, не принимаются
+    private static int wordIndex(long id) {
+        if (id < 0 || (id >>> 6) >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("id вне диапазона множества id: " + id);
+        }
+        return (int) (id >>> 6);
+    }
+
+    // Загрузка идёт под блокировкой записи: изменение, закоммиченное во время чтения из БД,
+    // дождётся её окончания и не потеряется
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+
+            List<Long> ids = loader.get();
+            long maxId = ids.stream().mapToLong(Long::longValue).max().orElse(0);
+            long[] loadedBits = new long[wordIndex(maxId) + 1];
+            for (Long id : ids) {
+                loadedBits[wordIndex(id)] |= 1L << id;
+            }
+
+            bits = loadedBits;
+            loaded = true;
+            log.info("Загружено множество id таблицы {}, записей: {}", name, ids.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
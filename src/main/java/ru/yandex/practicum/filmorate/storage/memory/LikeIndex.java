@@ -0,0 +1,351 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Матрица лайков пользователь-фильм, которая постоянно хранится в памяти и обновляется по одному лайку.
+// Для каждого пользователя хранится отсортированный массив id фильмов, для каждого фильма - массив id пользователей.
+// Пересечения считаются по примитивным массивам, без HashSet и без разбора строк из GROUP_CONCAT
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikeIndex {
+    private static final String GET_ALL_LIKES = """
+            SELECT user_id, film_id FROM "like"
+            """;
+    private static final long[] EMPTY = new long[0];
+
+    private final JdbcTemplate jdbc;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, long[]> filmsByUser = new HashMap<>();
+    private Map<Long, long[]> usersByFilm = new HashMap<>();
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Рекомендации для пользователя: фильмы, которые лайкнули пользователи с наибольшим числом
+    // общих с ним лайков, за исключением уже лайкнутых им самим. Результат отсортирован по id фильма
+    public long[] recommend(long userId) {
+        lock.readLock().lock();
+        try {
+            long[] userFilms = filmsByUser.getOrDefault(userId, EMPTY);
+            if (userFilms.length == 0) {
+                return EMPTY;
+            }
+
+            // все, кто лайкнул хотя бы один фильм пользователя; пользователь встречается столько раз,
+            // сколько у него общих лайков, поэтому после сортировки длина серии равна размеру пересечения
+            long[] coLikers = concat(userFilms, usersByFilm);
+            Arrays.sort(coLikers);
+
+            List<long[]> mostSimilarLikes = new ArrayList<>();
+            int maxOverlap = 0;
+            for (int start = 0; start < coLikers.length; ) {
+                long otherId = coLikers[start];
+                int end = start;
+                while (end < coLikers.length && coLikers[end] == otherId) {
+                    end++;
+                }
+
+                int overlap = end - start;
+                start = end;
+                if (otherId == userId || overlap < maxOverlap) {
+                    continue;
+                }
+                if (overlap > maxOverlap) {
+                    maxOverlap = overlap;
+                    mostSimilarLikes.clear();
+                }
+                mostSimilarLikes.add(filmsByUser.get(otherId));
+            }
+
+            long[] candidates = concat(mostSimilarLikes);
+            Arrays.sort(candidates);
+
+            int size = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                long filmId = candidates[i];
+                if ((i > 0 && candidates[i - 1] == filmId) || Arrays.binarySearch(userFilms, filmId) >= 0) {
+                    continue;
+                }
+                candidates[size++] = filmId;
+            }
+
+            return Arrays.copyOf(candidates, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Массивы в индексе не изменяются на месте, поэтому возвращённый массив можно читать без блокировки
+    public long[] getLikers(long filmId) {
+        lock.readLock().lock();
+        try {
+            return usersByFilm.getOrDefault(filmId, EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Соседи пользователя - все, у кого есть хотя бы один общий с ним лайк, включая его самого.
+    // Результат отсортирован и без повторов
+    public long[] getNeighbours(long userId) {
+        long[] neighbours;
+        lock.readLock().lock();
+        try {
+            neighbours = concat(filmsByUser.getOrDefault(userId, EMPTY), usersByFilm);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Arrays.stream(neighbours).sorted().distinct().toArray();
+    }
+
+    public void addLike(Long userId, Long filmId) {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.compute(userId, (id, films) -> insert(films, filmId));
+            usersByFilm.compute(filmId, (id, users) -> insert(users, userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Лайки группируются по пользователю и по фильму, и каждый массив пересобирается один раз,
+    // а не по разу на каждый лайк
+    public void addLikes(Collection<FilmLike> likes) {
+        Map<Long, List<Long>> filmIdsByUser = new HashMap<>();
+        Map<Long, List<Long>> userIdsByFilm = new HashMap<>();
+        for (FilmLike like : likes) {
+            filmIdsByUser.computeIfAbsent(like.userId(), id -> new ArrayList<>()).add(like.filmId());
+            userIdsByFilm.computeIfAbsent(like.filmId(), id -> new ArrayList<>()).add(like.userId());
+        }
+
+        lock.writeLock().lock();
+        try {
+            filmIdsByUser.forEach((userId, filmIds) -> filmsByUser.merge(userId, toSortedArray(filmIds),
+                    LikeIndex::merge));
+            userIdsByFilm.forEach((filmId, userIds) -> usersByFilm.merge(filmId, toSortedArray(userIds),
+                    LikeIndex::merge));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(Long userId, Long filmId) {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.computeIfPresent(userId, (id, films) -> delete(films, filmId));
+            usersByFilm.computeIfPresent(filmId, (id, users) -> delete(users, userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Полностью заменяет лайки фильма, используется при обновлении фильма целиком
+    public void setFilmLikes(Long filmId, Collection<Long> userIds) {
+        lock.writeLock().lock();
+        try {
+            removeFilmLikes(filmId);
+            for (Long userId : userIds) {
+                filmsByUser.compute(userId, (id, films) -> insert(films, filmId));
+                usersByFilm.compute(filmId, (id, users) -> insert(users, userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilmLikes(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Возвращает фильмы, которые лайкал пользователь
+    public long[] removeUser(Long userId) {
+        lock.writeLock().lock();
+        try {
+            long[] films = filmsByUser.remove(userId);
+            if (films == null) {
+                return EMPTY;
+            }
+            for (long filmId : films) {
+                usersByFilm.computeIfPresent(filmId, (id, users) -> delete(users, userId));
+            }
+            return films;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            filmsByUser = new HashMap<>();
+            usersByFilm = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Новые массивы собираются без блокировки, подменяются целиком под блокировкой записи
+    public void rebuild() {
+        Map<Long, LongList> films = new HashMap<>();
+        Map<Long, LongList> users = new HashMap<>();
+        jdbc.query(GET_ALL_LIKES, rs -> {
+            long userId = rs.getLong("user_id");
+            long filmId = rs.getLong("film_id");
+            films.computeIfAbsent(userId, id -> new LongList()).add(filmId);
+            users.computeIfAbsent(filmId, id -> new LongList()).add(userId);
+        });
+
+        Map<Long, long[]> rebuiltFilmsByUser = toSortedArrays(films);
+        Map<Long, long[]> rebuiltUsersByFilm = toSortedArrays(users);
+
+        lock.writeLock().lock();
+        try {
+            filmsByUser = rebuiltFilmsByUser;
+            usersByFilm = rebuiltUsersByFilm;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        ready = true;
+        log.info("Индекс лайков перестроен, пользователей: {}, фильмов: {}",
+                rebuiltFilmsByUser.size(), rebuiltUsersByFilm.size());
+    }
+
+    private void removeFilmLikes(Long filmId) {
+        long[] users = usersByFilm.remove(filmId);
+        if (users != null) {
+            for (long userId : users) {
+                filmsByUser.computeIfPresent(userId, (id, films) -> delete(films, filmId));
+            }
+        }
+    }
+
+    private static long[] concat(long[] keys, Map<Long, long[]> values) {
+        List<long[]> parts = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            parts.add(values.getOrDefault(key, EMPTY));
+        }
+        return concat(parts);
+    }
+
+    private static long[] concat(List<long[]> parts) {
+        int length = 0;
+        for (long[] part : parts) {
+            length += part.length;
+        }
+
+        long[] result = new long[length];
+        int position = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+
+    private static long[] insert(long[] values, long value) {
+        if (values == null) {
+            return new long[]{value};
+        }
+
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0) {
+            return values;
+        }
+
+        index = -index - 1;
+        long[] result = new long[values.length + 1];
+        System.arraycopy(values, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(values, index, result, index + 1, values.length - index);
+        return result;
+    }
+
+    private static long[] toSortedArray(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    }
+
+    // Слияние двух отсортированных массивов без повторов
+    private static long[] merge(long[] values, long[] added) {
+        long[] result = new long[values.length + added.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < values.length || j < added.length) {
+            long next;
+            if (j == added.length || (i < values.length && values[i] <= added[j])) {
+                next = values[i++];
+            } else {
+                next = added[j++];
+            }
+            if (size == 0 || result[size - 1] != next) {
+                result[size++] = next;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    // возвращает null для пустого массива, чтобы compute удалил ключ из мапы
+    private static long[] delete(long[] values, long value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return values;
+        }
+        if (values.length == 1) {
+            return null;
+        }
+
+        long[] result = new long[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+        return result;
+    }
+
+    private static Map<Long, long[]> toSortedArrays(Map<Long, LongList> lists) {
+        Map<Long, long[]> result = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Long, LongList> entry : lists.entrySet()) {
+            long[] values = entry.getValue().toArray();
+            Arrays.sort(values);
+            result.put(entry.getKey(), values);
+        }
+        return result;
+    }
+
+    private static class LongList {
+        private long[] values = new long[4];
+        private int size = 0;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Рейтинг фильмов по количеству лайков, который постоянно хранится в памяти.
+// Одна общая упорядоченная коллекция и по одной на каждый жанр и год выпуска,
+// изменение количества лайков у фильма стоит O(log n) на каждую коллекцию, где он лежит
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PopularityLeaderboard {
+    private static final String GET_FILM_RANKS = """
+            SELECT id, like_count, release_date FROM film
+            """;
+    private static final String GET_FILM_GENRES = """
+            SELECT film_id, genre_id FROM film_genre
+            """;
+    private static final String GET_CHECKSUM = """
+            SELECT COUNT(*) AS films, COALESCE(SUM(like_count), 0) AS likes FROM film
+            """;
+
+    private static final Comparator<Entry> BY_POPULARITY = Comparator
+            .comparingLong(Entry::likeCount).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final JdbcTemplate jdbc;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<Long> getTop(long limit, Long genreId, Year year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> source;
+            Long genreFilter = null;
+            Integer yearFilter = null;
+
+            if (genreId == null && year == null) {
+                source = state.global;
+            } else if (genreId == null) {
+                source = state.byYear.get(year.getValue());
+            } else if (year == null) {
+                source = state.byGenre.get(genreId);
+            } else {
+                // идём по меньшей из двух коллекций и отфильтровываем по второму условию
+                NavigableSet<Entry> genreSet = state.byGenre.get(genreId);
+                NavigableSet<Entry> yearSet = state.byYear.get(year.getValue());
+                if (genreSet == null || yearSet == null) {
+                    return new ArrayList<>();
+                }
+                if (genreSet.size() <= yearSet.size()) {
+                    source = genreSet;
+                    yearFilter = year.getValue();
+                } else {
+                    source = yearSet;
+                    genreFilter = genreId;
+                }
+            }
+
+            List<Long> result = new ArrayList<>();
+            if (source == null) {
+                return result;
+            }
+
+            for (Entry entry : source) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (yearFilter != null && entry.year() != yearFilter) {
+                    continue;
+                }
+                if (genreFilter != null && !entry.genreIds().contains(genreFilter)) {
+                    continue;
+                }
+                result.add(entry.filmId());
+            }
+
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Страница из переданных фильмов в порядке рейтинга: не больше limit фильмов, которые в рейтинге стоят
+    // после фильма afterId по его текущему ключу (лайки, id). Фильмы, которых нет в рейтинге, пропускаются.
+    // Переданные фильмы не сортируются целиком: кандидаты после курсора просеиваются через кучу
+    // из limit лучших, поэтому страница стоит O(n log limit), а не сортировки всех совпадений
+    public List<Long> rank(Collection<Long> filmIds, Long afterId, long limit) {
+        lock.readLock().lock();
+        try {
+            Entry cursor = null;
+            if (afterId != null) {
+                cursor = state.entries.get(afterId);
+                if (cursor == null) {
+                    return List.of();
+                }
+            }
+
+            int capacity = (int) Math.min(limit, filmIds.size());
+            if (capacity <= 0) {
+                return List.of();
+            }
+
+            PriorityQueue<Entry> worstFirst = new PriorityQueue<>(capacity, BY_POPULARITY.reversed());
+            for (Long filmId : filmIds) {
+                Entry entry = state.entries.get(filmId);
+                if (entry == null || (cursor != null && BY_POPULARITY.compare(entry, cursor) <= 0)) {
+                    continue;
+                }
+                if (worstFirst.size() < capacity) {
+                    worstFirst.add(entry);
+                } else if (BY_POPULARITY.compare(entry, worstFirst.peek()) < 0) {
+                    worstFirst.poll();
+                    worstFirst.add(entry);
+                }
+            }
+
+            List<Entry> page = new ArrayList<>(worstFirst);
+            page.sort(BY_POPULARITY);
+            return page.stream().map(Entry::filmId).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Film film) {
+        Set<Long> genreIds = new HashSet<>();
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                genreIds.add(genre.getId());
+            }
+        }
+        long likeCount = film.getLikes() == null ? 0 : film.getLikes().size();
+
+        lock.writeLock().lock();
+        try {
+            state.remove(film.getId());
+            state.add(new Entry(film.getId(), likeCount, film.getReleaseDate().getYear(), genreIds));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Прирост лайков сразу для многих фильмов под одной блокировкой записи
+    public void addLikes(Map<Long, Long> deltas) {
+        lock.writeLock().lock();
+        try {
+            deltas.forEach((filmId, delta) -> {
+                Entry entry = state.remove(filmId);
+                if (entry == null) {
+                    log.debug("Фильма с id: {} нет в рейтинге, изменение количества лайков пропущено", filmId);
+                    return;
+                }
+                state.add(new Entry(filmId, entry.likeCount() + delta, entry.year(), entry.genreIds()));
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Все лайки удалены: фильмы остаются в рейтинге с нулём лайков, БД для этого не читается
+    public void resetLikeCounts() {
+        lock.writeLock().lock();
+        try {
+            State reset = new State();
+            for (Entry entry : state.entries.values()) {
+                reset.add(new Entry(entry.filmId(), 0, entry.year(), entry.genreIds()));
+            }
+            state = reset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            state.remove(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            state = new State();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Новое состояние собирается без блокировки, подменяется целиком под блокировкой записи
+    public void rebuild() {
+        Map<Long, Set<Long>> genresByFilm = new HashMap<>();
+        jdbc.query(GET_FILM_GENRES, rs -> {
+            genresByFilm.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>()).add(rs.getLong("genre_id"));
+        });
+
+        State rebuilt = new State();
+        jdbc.query(GET_FILM_RANKS, rs -> {
+            long filmId = rs.getLong("id");
+            rebuilt.add(new Entry(filmId,
+                    rs.getLong("like_count"),
+                    rs.getDate("release_date").toLocalDate().getYear(),
+                    genresByFilm.getOrDefault(filmId, Set.of())));
+        });
+
+        lock.writeLock().lock();
+        try {
+            state = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        ready = true;
+        log.info("Рейтинг популярности фильмов перестроен, фильмов в рейтинге: {}", rebuilt.entries.size());
+    }
+
+    // Сверяет количество фильмов и сумму лайков с БД, при расхождении рейтинг перестраивается
+    @Scheduled(fixedDelayString = "${filmorate.leaderboard.check-interval:PT5M}",
+            initialDelayString = "${filmorate.leaderboard.check-interval:PT5M}")
+    public void checkDrift() {
+        if (!ready) {
+            return;
+        }
+
+        long[] checksum = jdbc.queryForObject(GET_CHECKSUM,
+                (rs, rowNum) -> new long[]{rs.getLong("films"), rs.getLong("likes")});
+
+        long films;
+        long likes = 0;
+        lock.readLock().lock();
+        try {
+            films = state.entries.size();
+            for (Entry entry : state.entries.values()) {
+                likes += entry.likeCount();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (checksum != null && (checksum[0] != films || checksum[1] != likes)) {
+            log.warn("Рейтинг популярности разошёлся с БД: фильмов {} / {}, лайков {} / {}. Перестраиваем",
+                    films, checksum[0], likes, checksum[1]);
+            rebuild();
+        }
+    }
+
+    private record Entry(long filmId, long likeCount, int year, Set<Long> genreIds) {
+    }
+
+    private static class State {
+        private final Map<Long, Entry> entries = new HashMap<>();
+        private final NavigableSet<Entry> global = new TreeSet<>(BY_POPULARITY);
+        private final Map<Long, NavigableSet<Entry>> byGenre = new HashMap<>();
+        private final Map<Integer, NavigableSet<Entry>> byYear = new HashMap<>();
+
+        private void add(Entry entry) {
+            entries.put(entry.filmId(), entry);
+            global.add(entry);
+            byYear.computeIfAbsent(entry.year(), year -> new TreeSet<>(BY_POPULARITY)).add(entry);
+            for (Long genreId : entry.genreIds()) {
+                byGenre.computeIfAbsent(genreId, id -> new TreeSet<>(BY_POPULARITY)).add(entry);
+            }
+        }
+
+        private Entry remove(Long filmId) {
+            Entry entry = entries.remove(filmId);
+            if (entry == null) {
+                return null;
+            }
+
+            global.remove(entry);
+            removeFromBucket(byYear, entry.year(), entry);
+            for (Long genreId : entry.genreIds()) {
+                removeFromBucket(byGenre, genreId, entry);
+            }
+            return entry;
+        }
+
+        private <K> void removeFromBucket(Map<K, NavigableSet<Entry>> buckets, K key, Entry entry) {
+            Collection<Entry> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+}
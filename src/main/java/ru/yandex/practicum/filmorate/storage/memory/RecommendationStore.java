@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Готовые рекомендации по пользователям. Заполняются при первом запросе и затем пересчитываются
+// в фоне, а при лайке сбрасываются у тех, чьи рекомендации он мог изменить.
+// Запись старше maxStaleness никогда не отдаётся - в этом случае рекомендации считаются синхронно.
+// Как и в VersionedCache, у пользователей есть версии (по полосам), сброс увеличивает версию,
+// и результат, посчитанный до сброса, не кэшируется. Лайк не мешает расчётам для не задетых им пользователей
+@Slf4j
+@Component
+public class RecommendationStore {
+    private static final int VERSION_STRIPES = 1024;
+
+    private final LikeIndex likeIndex;
+    private final long maxStalenessNanos;
+    private final long refreshAfterNanos;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    // общая версия для clear(), которая сбрасывает всех сразу
+    private final AtomicLong epoch = new AtomicLong();
+
+    public RecommendationStore(LikeIndex likeIndex,
+                               @Value("${filmorate.recommendations.max-staleness:PT5M}") Duration maxStaleness,
+                               @Value("${filmorate.recommendations.refresh-interval:PT1M}") Duration refreshInterval) {
+        if (refreshInterval.compareTo(maxStaleness) > 0) {
+            log.warn("Интервал обновления рекомендаций {} больше допустимого устаревания {}, "
+                    + "часть запросов будет считаться синхронно", refreshInterval, maxStaleness);
+        }
+        this.likeIndex = likeIndex;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.refreshAfterNanos = refreshInterval.toNanos();
+    }
+
+    public long[] get(long userId) {
+        Entry entry = entries.get(userId);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.computedAt() <= maxStalenessNanos) {
+            return entry.filmIds();
+        }
+
+        log.debug("Рекомендаций для пользователя с id: {} нет или они устарели, считаем синхронно", userId);
+        return compute(userId);
+    }
+
+    // Рекомендации пользователя зависят от его пересечений с соседями и от лайков самых похожих из них.
+    // Лайк меняет пересечения самого пользователя с теми, кто лайкнул тот же фильм, и набор его лайков,
+    // который участвует в рекомендациях всех его соседей - их рекомендации тоже сбрасываются.
+    // Вызывается после обновления индекса лайков, поэтому соседи после удаления лайка
+    // дополняются теми, кто лайкнул фильм
+    public void invalidateLike(long userId, long filmId) {
+        invalidate(userId);
+        for (long likerId : likeIndex.getLikers(filmId)) {
+            invalidate(likerId);
+        }
+        for (long neighbourId : likeIndex.getNeighbours(userId)) {
+            invalidate(neighbourId);
+        }
+    }
+
+    public void clear() {
+        epoch.incrementAndGet();
+        entries.clear();
+    }
+
+    // Пересчитывает записи, которые старше интервала обновления, пока они ещё не устарели окончательно
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.refresh-interval:PT1M}",
+            initialDelayString = "${filmorate.recommendations.refresh-interval:PT1M}")
+    public void refresh() {
+        if (!likeIndex.isReady()) {
+            return;
+        }
+
+        int refreshed = 0;
+        long now = System.nanoTime();
+        for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+            if (now - entry.getValue().computedAt() >= refreshAfterNanos) {
+                compute(entry.getKey());
+                refreshed++;
+            }
+        }
+
+        log.debug("Фоновое обновление рекомендаций, пересчитано пользователей: {}", refreshed);
+    }
+
+    private long[] compute(long userId) {
+        long epochBefore = epoch.get();
+        long versionBefore = versions.get(stripe(userId));
+        long computedAt = System.nanoTime();
+        long[] filmIds = likeIndex.recommend(userId);
+
+        Entry entry = new Entry(filmIds, computedAt);
+        entries.put(userId, entry);
+        if (epoch.get() != epochBefore || versions.get(stripe(userId)) != versionBefore) {
+            // за время расчёта пользователя сбросили - запись могла устареть, пусть следующий запрос посчитает
+            // заново. Запись, которую успел положить более поздний расчёт, не трогаем
+            entries.remove(userId, entry);
+        }
+        return filmIds;
+    }
+
+    private void invalidate(long userId) {
+        versions.incrementAndGet(stripe(userId));
+        entries.remove(userId);
+    }
+
+    private static int stripe(long userId) {
+        return Long.hashCode(userId) & (VERSION_STRIPES - 1);
+    }
+
+    private record Entry(long[] filmIds, long computedAt) {
+    }
+}
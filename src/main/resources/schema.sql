@@ -18,9 +18,15 @@ CREATE TABLE IF NOT EXISTS film (
     name VARCHAR(100) NOT NULL,
     description TEXT(1000),
     release_date DATE NOT NULL,
-    duration INTEGER NOT NULL
+    duration INTEGER NOT NULL,
+    like_count BIGINT NOT NULL DEFAULT 0
 );
 
+-- Денормализованное количество лайков, по нему сортируются все рейтинги фильмов.
+-- ALTER нужен для уже существующих баз, созданных до появления столбца
+ALTER TABLE film ADD COLUMN IF NOT EXISTS like_count BIGINT NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS film_like_count_idx ON film (like_count DESC, id);
+
 CREATE TABLE IF NOT EXISTS friendship_status (
     id BIGINT PRIMARY KEY,
     name VARCHAR(50) NOT NULL DEFAULT 'unconfirmed'
@@ -83,6 +89,13 @@ CREATE TABLE IF NOT EXISTS review_likes (
     PRIMARY KEY (review_id, user_id)
 );
 
+-- Списки лучших отзывов, общий и по фильму, читаются по индексу уже в нужном порядке
+CREATE INDEX IF NOT EXISTS reviews_useful_idx ON reviews (useful DESC, review_id);
+CREATE INDEX IF NOT EXISTS reviews_film_useful_idx ON reviews (film_id, useful DESC, review_id);
+
+-- Для пересчёта useful по оценкам
+CREATE INDEX IF NOT EXISTS review_likes_review_is_like_idx ON review_likes (review_id, is_like);
+
 -- Таблица для хранения событий
 CREATE TABLE IF NOT EXISTS user_event (
     event_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -91,4 +104,15 @@ CREATE TABLE IF NOT EXISTS user_event (
     operation VARCHAR(10) NOT NULL,  -- ADD, REMOVE, UPDATE
     entity_id BIGINT NOT NULL,  -- ID сущности (фильма, отзыва, друга и т. д.)
     timestamp TIMESTAMP NOT NULL DEFAULT NOW()
-);
\ No newline at end of file
+);
+
+-- Лента пользователя читается по возрастанию event_id, начиная с заданного
+CREATE INDEX IF NOT EXISTS user_event_user_event_idx ON user_event (user_id, event_id);
+
+-- Последовательности для выдачи id. IdAllocator резервирует из них id блоками,
+-- размер блока задаётся через INCREMENT BY при первом обращении к последовательности
+CREATE SEQUENCE IF NOT EXISTS film_id_seq;
+CREATE SEQUENCE IF NOT EXISTS user_id_seq;
+CREATE SEQUENCE IF NOT EXISTS genre_id_seq;
+CREATE SEQUENCE IF NOT EXISTS rating_id_seq;
+CREATE SEQUENCE IF NOT EXISTS director_id_seq;
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.storage.dal.mapper.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.dal.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dal.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.dal.mapper.RatingMpaRowMapper;
+
+import java.util.EnumSet;
+import java.util.List;
+
+public class FilmRepositoryTest {
+    private FilmRepository filmRepository;
+
+    @BeforeEach
+    public void beforeEach() {
+        JdbcTemplate jdbc = new JdbcTemplate(TestDatabase.create());
+        // те же фильмы и лайки, что в PopularityLeaderboardTest: порядок по популярности 2, 1, 4, 3
+        jdbc.update("""
+                INSERT INTO film (id, name, description, release_date, duration, like_count) VALUES
+                (1, 'Star 1', 'description', '2010-01-01', 100, 2),
+                (2, 'Film 2', 'description', '2010-01-01', 100, 3),
+                (3, 'Star 3', 'description', '1999-01-01', 100, 0),
+                (4, 'Star 4', 'description', '1999-01-01', 100, 1)""");
+
+        IdAllocator idAllocator = new IdAllocator(jdbc, 50);
+        GenreRepository genreRepository = new GenreRepository(jdbc, new GenreRowMapper(jdbc), idAllocator);
+        RatingMpaRepository ratingMpaRepository =
+                new RatingMpaRepository(jdbc, new RatingMpaRowMapper(jdbc), idAllocator);
+        DirectorRepository directorRepository = new DirectorRepository(jdbc, new DirectorRowMapper(), idAllocator);
+        FilmHydrator hydrator = new FilmHydrator(jdbc, genreRepository, ratingMpaRepository, directorRepository,
+                false, 1, 1);
+        filmRepository = new FilmRepository(jdbc, new FilmRowMapper(), idAllocator, hydrator,
+                genreRepository, ratingMpaRepository, directorRepository);
+    }
+
+    // Поиск по БД, пока индексы не прогреты, листает так же, как рейтинг в памяти
+    @Test
+    public void testSearchPagesAfterCursor() {
+        Assertions.assertEquals(List.of(1L, 4L, 3L), search(null, null));
+        Assertions.assertEquals(List.of(1L, 4L), search(null, 2L));
+        Assertions.assertEquals(List.of(3L), search(4L, 2L));
+        // курсор не обязан входить в выдачу: страница начинается после его места в рейтинге
+        Assertions.assertEquals(List.of(1L, 4L), search(2L, 2L));
+        Assertions.assertEquals(List.of(), search(3L, 2L));
+        Assertions.assertEquals(List.of(3L), search("title,director", 4L, 2L));
+        Assertions.assertEquals(List.of(), search("director", null, null));
+    }
+
+    private List<Long> search(Long afterId, Long limit) {
+        return search("title", afterId, limit);
+    }
+
+    private List<Long> search(String by, Long afterId, Long limit) {
+        return filmRepository.search("star", by, afterId, limit, EnumSet.noneOf(FilmField.class)).stream()
+                .map(Film::getId)
+                .toList();
+    }
+}
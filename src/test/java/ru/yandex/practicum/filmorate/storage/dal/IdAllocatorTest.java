@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+public class IdAllocatorTest {
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    public void beforeEach() {
+        jdbc = new JdbcTemplate(TestDatabase.create());
+    }
+
+    @Test
+    public void testBlocksFollowEachOther() {
+        IdAllocator allocator = new IdAllocator(jdbc, 3);
+
+        // в data.sql жанры с id 1-6
+        List<Long> ids = LongStream.range(0, 7).mapToObj(i -> allocator.next("genre")).toList();
+        Assertions.assertEquals(LongStream.rangeClosed(7, 13).boxed().toList(), ids);
+    }
+
+    @Test
+    public void testRestartsPastExistingMaxId() {
+        jdbc.update("INSERT INTO film (id, name, description, release_date, duration) " +
+                "VALUES (100, 'Film', 'Description', DATE '2000-01-01', 90)");
+
+        Assertions.assertEquals(101, new IdAllocator(jdbc, 50).next("film"));
+        Assertions.assertEquals(1, new IdAllocator(jdbc, 50).next("user"));
+    }
+
+    @Test
+    public void testSecondInstanceDoesNotRewindReservedBlocks() {
+        IdAllocator first = new IdAllocator(jdbc, 10);
+        Assertions.assertEquals(1, first.next("director"));
+
+        // первый экземпляр зарезервировал [1, 11), но в таблицу ещё ничего не записал
+        IdAllocator second = new IdAllocator(jdbc, 10);
+        Assertions.assertEquals(11, second.next("director"));
+        Assertions.assertEquals(2, first.next("director"));
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique() throws Exception {
+        IdAllocator allocator = new IdAllocator(jdbc, 7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        Assertions.assertTrue(ids.add(allocator.next("user")));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        Assertions.assertEquals(8000, ids.size());
+    }
+}
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.dal.mapper.ReviewRowMapper;
+
+public class ReviewRepositoryTest {
+    private JdbcTemplate jdbc;
+    private ReviewRepository reviewRepository;
+    private long reviewId;
+
+    @BeforeEach
+    public void beforeEach() {
+        jdbc = new JdbcTemplate(TestDatabase.create());
+        jdbc.update("""
+                INSERT INTO "user" (id, email, login, name, birthday) VALUES
+                (1, 'first@mail.ru', 'first', 'First', '2000-01-01'),
+                (2, 'second@mail.ru', 'second', 'Second', '2000-01-01')""");
+        jdbc.update("INSERT INTO film (id, name, description, release_date, duration) "
+                + "VALUES (1, 'Film', 'description', '2000-01-01', 100)");
+
+        reviewRepository = new ReviewRepository(jdbc, new ReviewRowMapper());
+        reviewId = reviewRepository.add(Review.builder()
+                .content("content")
+                .isPositive(true)
+                .userId(1L)
+                .filmId(1L)
+                .build()).getReviewId();
+    }
+
+    @Test
+    public void testNewAndRepeatedVotes() {
+        reviewRepository.vote(reviewId, 1L, true);
+        Assertions.assertEquals(1, useful());
+        reviewRepository.vote(reviewId, 1L, true);
+        Assertions.assertEquals(1, useful());
+
+        reviewRepository.vote(reviewId, 2L, false);
+        Assertions.assertEquals(0, useful());
+        reviewRepository.vote(reviewId, 2L, false);
+        Assertions.assertEquals(0, useful());
+        Assertions.assertEquals(2, voteCount());
+    }
+
+    @Test
+    public void testDislikeReplacesLikeAndLikeOnlyRemovesDislike() {
+        reviewRepository.vote(reviewId, 1L, true);
+        reviewRepository.vote(reviewId, 1L, false);
+        Assertions.assertEquals(-1, useful());
+        Assertions.assertEquals(1, voteCount());
+
+        reviewRepository.vote(reviewId, 1L, true);
+        Assertions.assertEquals(0, useful());
+        Assertions.assertEquals(0, voteCount());
+    }
+
+    @Test
+    public void testDeleteVote() {
+        reviewRepository.vote(reviewId, 1L, true);
+
+        Assertions.assertFalse(reviewRepository.deleteVote(reviewId, 1L, false));
+        Assertions.assertFalse(reviewRepository.deleteVote(reviewId, 2L, true));
+        Assertions.assertEquals(1, useful());
+
+        Assertions.assertTrue(reviewRepository.deleteVote(reviewId, 1L, true));
+        Assertions.assertEquals(0, useful());
+        Assertions.assertFalse(reviewRepository.deleteVote(reviewId, 1L, true));
+        Assertions.assertEquals(0, useful());
+    }
+
+    @Test
+    public void testRebuildUseful() {
+        reviewRepository.vote(reviewId, 1L, false);
+        reviewRepository.vote(reviewId, 2L, false);
+        Assertions.assertEquals(0, reviewRepository.rebuildUseful());
+
+        jdbc.update("UPDATE reviews SET useful = 10 WHERE review_id = ?", reviewId);
+        Assertions.assertEquals(1, reviewRepository.rebuildUseful());
+        Assertions.assertEquals(-2, useful());
+        Assertions.assertEquals(0, reviewRepository.rebuildUseful());
+    }
+
+    private int useful() {
+        return reviewRepository.get(reviewId).getUseful();
+    }
+
+    private int voteCount() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM review_likes WHERE review_id = ?", Integer.class, reviewId);
+    }
+}
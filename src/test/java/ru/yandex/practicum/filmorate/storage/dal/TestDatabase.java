@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+// Отдельная H2 в памяти на каждый тест со схемой и справочниками приложения.
+// Скрипты берутся из src/main/resources: одноимённые файлы в src/test/resources их перекрывают на classpath
+final class TestDatabase {
+    private TestDatabase() {
+    }
+
+    static DataSource create() {
+        DataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(
+                new FileSystemResource("src/main/resources/schema.sql"),
+                new FileSystemResource("src/main/resources/data.sql")).execute(dataSource);
+        return dataSource;
+    }
+}
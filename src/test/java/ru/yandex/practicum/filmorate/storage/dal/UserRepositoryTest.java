@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.storage.dal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.FriendshipStatus;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dal.mapper.UserRowMapper;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class UserRepositoryTest {
+    private static final int USER_COUNT = 1234;
+
+    private UserRepository userRepository;
+
+    @BeforeEach
+    public void beforeEach() {
+        // одно соединение на всё приложение: поток, держащий соединение, пока догружаются друзья,
+        // ждал бы сам себя до истечения таймаута
+        DataSource dataSource = (DataSource) new DataSourceLimiter(1, Duration.ofSeconds(2), false, 10)
+                .postProcessAfterInitialization(TestDatabase.create(), "dataSource");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+        List<Object[]> users = new ArrayList<>();
+        for (long id = 1; id <= USER_COUNT; id++) {
+            users.add(new Object[]{id, "user" + id + "@mail.ru", "user" + id, "User " + id,
+                    Date.valueOf(LocalDate.of(2000, 1, 1))});
+        }
+        jdbc.batchUpdate("INSERT INTO \"user\" (id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)", users);
+        jdbc.update("INSERT INTO \"friend\" (user_id, friend_id, friendship_status_id) VALUES (1000, 1, 1)");
+
+        userRepository = new UserRepository(jdbc, new UserRowMapper(), new IdAllocator(jdbc, 50),
+                new UserHydrator(jdbc));
+    }
+
+    @Test
+    public void testStreamReleasesConnectionBetweenPages() {
+        List<User> streamed = new ArrayList<>();
+        userRepository.stream(0, null, true, streamed::add);
+
+        Assertions.assertEquals(USER_COUNT, streamed.size());
+        for (int i = 0; i < USER_COUNT; i++) {
+            Assertions.assertEquals(i + 1, streamed.get(i).getId());
+        }
+        Assertions.assertEquals(Map.of(1L, FriendshipStatus.UNCONFIRMED), streamed.get(999).getFriendStatusMap());
+        Assertions.assertEquals(Map.of(), streamed.get(0).getFriendStatusMap());
+    }
+
+    @Test
+    public void testStreamStopsAtLimitAfterCursor() {
+        List<User> streamed = new ArrayList<>();
+        userRepository.stream(100, 600L, false, streamed::add);
+
+        Assertions.assertEquals(600, streamed.size());
+        Assertions.assertEquals(101L, streamed.get(0).getId());
+        Assertions.assertEquals(700L, streamed.get(599).getId());
+    }
+}
@@ -0,0 +1,106 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.UserEvent;
+import ru.yandex.practicum.filmorate.storage.dal.FeedRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BufferedFeedStorageTest {
+    // события этого пользователя БД не принимает, как будто он удалён
+    private static final long DELETED_USER_ID = 666L;
+
+    // БД для этих проверок не нужна: записанные пакеты запоминаются, лент друзей в памяти нет
+    private final List<List<Long>> batches = new ArrayList<>();
+    private final FeedRepository delegate = new FeedRepository(null, null) {
+        @Override
+        public void addEventsToFeed(List<UserEvent> events) {
+            List<Long> userIds = events.stream().map(UserEvent::getUserId).toList();
+            if (userIds.contains(DELETED_USER_ID)) {
+                throw new DataIntegrityViolationException("Не существует пользователь с id: " + DELETED_USER_ID);
+            }
+            synchronized (batches) {
+                batches.add(userIds);
+            }
+        }
+    };
+    private BufferedFeedStorage storage;
+
+    @AfterEach
+    public void afterEach() throws InterruptedException {
+        storage.close();
+    }
+
+    @Test
+    public void testEventsAreWrittenInBatches() {
+        storage = storage(BufferedFeedStorage.WriteMode.ASYNC, 3, Duration.ofSeconds(1));
+        addEvents(1L, 2L, 3L, 4L);
+        storage.flush();
+
+        Assertions.assertEquals(List.of(List.of(1L, 2L, 3L), List.of(4L)), batches());
+    }
+
+    @Test
+    public void testFlushDoesNotWaitForFullBatch() {
+        storage = storage(BufferedFeedStorage.WriteMode.ASYNC, 100, Duration.ofSeconds(1));
+        addEvents(1L, 2L);
+
+        Assertions.assertTimeout(Duration.ofMillis(500), storage::flush);
+        Assertions.assertEquals(List.of(List.of(1L, 2L)), batches());
+    }
+
+    @Test
+    public void testGroupModeWaitsForWrite() {
+        storage = storage(BufferedFeedStorage.WriteMode.GROUP, 100, Duration.ofSeconds(1));
+
+        // одиночное событие пишется сразу, не дожидаясь интервала
+        Assertions.assertTimeout(Duration.ofMillis(300), () -> addEvents(1L));
+        Assertions.assertEquals(List.of(List.of(1L)), batches());
+    }
+
+    @Test
+    public void testFailedBatchIsWrittenOneByOne() {
+        storage = storage(BufferedFeedStorage.WriteMode.ASYNC, 100, Duration.ofSeconds(1));
+        addEvents(1L, DELETED_USER_ID, 2L);
+        storage.flush();
+
+        Assertions.assertEquals(List.of(List.of(1L), List.of(2L)), batches());
+    }
+
+    @Test
+    public void testCloseDrainsQueue() throws InterruptedException {
+        storage = storage(BufferedFeedStorage.WriteMode.ASYNC, 100, Duration.ofMillis(200));
+        addEvents(1L, 2L);
+        storage.close();
+        Assertions.assertEquals(List.of(1L, 2L), batches().stream().flatMap(List::stream).toList());
+
+        // после закрытия события пишутся напрямую
+        addEvents(3L);
+        Assertions.assertEquals(List.of(3L), batches().getLast());
+    }
+
+    private BufferedFeedStorage storage(BufferedFeedStorage.WriteMode mode, int batchSize, Duration flushInterval) {
+        FriendTimelineStore timelines = new FriendTimelineStore(null, null, 200, 1000, 10000);
+        return new BufferedFeedStorage(delegate, timelines, mode, 1000, batchSize, flushInterval,
+                Duration.ofSeconds(1));
+    }
+
+    private void addEvents(Long... userIds) {
+        for (Long userId : userIds) {
+            storage.addEventToFeed(userId, EventType.LIKE, Operation.ADD, 1L);
+        }
+    }
+
+    private List<List<Long>> batches() {
+        synchronized (batches) {
+            return List.copyOf(batches);
+        }
+    }
+}
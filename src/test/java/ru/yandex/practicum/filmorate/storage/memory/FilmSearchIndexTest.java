@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.Set;
+
+public class FilmSearchIndexTest {
+    private FilmSearchIndex searchIndex;
+
+    @BeforeEach
+    public void beforeEach() {
+        // БД для этих проверок не нужна, индекс наполняется напрямую
+        searchIndex = new FilmSearchIndex(null);
+        searchIndex.put(film(1L, "Ёлки-палки", Set.of(director(1L, "Тимур Бекмамбетов"))));
+        searchIndex.put(film(2L, "The Dark Knight", Set.of(director(2L, "Christopher Nolan"))));
+        searchIndex.put(film(3L, "Inception", Set.of(director(2L, "Christopher Nolan"))));
+    }
+
+    @Test
+    public void testTokenizeFoldsCaseAndDiacritics() {
+        Assertions.assertEquals(List.of("елки", "палки"), FilmSearchIndex.tokenize("ЁЛКИ-палки!"));
+        Assertions.assertEquals(List.of("cafe", "2"), FilmSearchIndex.tokenize("  Café  2 "));
+        // й - отдельная буква, а не и с диакритикой: "бой" и "бои" - разные слова
+        Assertions.assertEquals(List.of("мой", "бой", "мои", "бои"), FilmSearchIndex.tokenize("Мой БОЙ, мои бои"));
+        // разложенная "й" (и + кратка) собирается обратно
+        Assertions.assertEquals(List.of("еж", "йод"), FilmSearchIndex.tokenize("ЁЖ и\u0306од"));
+    }
+
+    @Test
+    public void testSearchByWordPrefixes() {
+        Assertions.assertEquals(Set.of(1L), searchIndex.search("ёлк", true, false));
+        Assertions.assertEquals(Set.of(2L), searchIndex.search("dark KN", true, false));
+        Assertions.assertEquals(Set.of(), searchIndex.search("dark inc", true, false));
+        Assertions.assertEquals(Set.of(2L, 3L), searchIndex.search("NOL", false, true));
+        // совпадение только с началом слова: "in" находит Inception, но не Knight
+        Assertions.assertEquals(Set.of(3L), searchIndex.search("in", true, false));
+    }
+
+    @Test
+    public void testQueryWithoutWords() {
+        Assertions.assertEquals(Set.of(1L, 2L, 3L), searchIndex.search("", true, true));
+        Assertions.assertEquals(Set.of(), searchIndex.search("!!!", true, true));
+        Assertions.assertEquals(Set.of(), searchIndex.search("  - ", true, false));
+    }
+
+    @Test
+    public void testDirectorChangesAreReflected() {
+        searchIndex.putDirector(director(2L, "Кристофер Нолан"));
+        Assertions.assertEquals(Set.of(), searchIndex.search("nolan", false, true));
+        Assertions.assertEquals(Set.of(2L, 3L), searchIndex.search("нолан", true, true));
+
+        searchIndex.removeDirector(2L);
+        Assertions.assertEquals(Set.of(), searchIndex.search("нолан", false, true));
+
+        searchIndex.removeFilm(1L);
+        Assertions.assertEquals(Set.of(), searchIndex.search("тимур", false, true));
+    }
+
+    private Film film(Long id, String name, Set<Director> directors) {
+        return Film.builder()
+                .id(id)
+                .name(name)
+                .directors(directors)
+                .build();
+    }
+
+    private Director director(Long id, String name) {
+        return Director.builder()
+                .id(id)
+                .name(name)
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class IdSetTest {
+    private IdSet ids;
+
+    @BeforeEach
+    public void beforeEach() {
+        // вне транзакции изменения применяются сразу
+        ids = new IdSet("test", () -> List.of(1L, 2L, 63L, 64L));
+    }
+
+    @Test
+    public void testContainsLoadedAndChangedIds() {
+        Assertions.assertTrue(ids.contains(1L));
+        Assertions.assertTrue(ids.contains(63L));
+        Assertions.assertTrue(ids.contains(64L));
+        Assertions.assertFalse(ids.contains(0L));
+        Assertions.assertFalse(ids.contains(3L));
+
+        ids.add(1000L);
+        ids.remove(2L);
+        Assertions.assertTrue(ids.contains(1000L));
+        Assertions.assertFalse(ids.contains(2L));
+        Assertions.assertFalse(ids.contains(999L));
+    }
+
+    @Test
+    public void testLargeAndBoundaryIdsAreAbsent() {
+        // 2^38 + 1 при приведении номера слова к int попадал бы в слово 0, где лежит id 1
+        Assertions.assertFalse(ids.contains((1L << 38) + 1));
+        Assertions.assertFalse(ids.contains((1L << 32) + 1));
+        Assertions.assertFalse(ids.contains(Long.MAX_VALUE));
+        Assertions.assertFalse(ids.contains(Long.MIN_VALUE));
+        Assertions.assertFalse(ids.contains(-1L));
+        Assertions.assertFalse(ids.contains(null));
+
+        ids.remove(Long.MAX_VALUE);
+        ids.remove((1L << 38) + 1);
+        Assertions.assertTrue(ids.contains(1L));
+    }
+
+    @Test
+    public void testClearAndReload() {
+        Assertions.assertTrue(ids.contains(1L));
+        ids.clear();
+        Assertions.assertFalse(ids.contains(1L));
+
+        ids.reload();
+        Assertions.assertTrue(ids.contains(1L));
+    }
+}
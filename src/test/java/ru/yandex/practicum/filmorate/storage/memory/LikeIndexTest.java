@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+
+import java.util.List;
+
+public class LikeIndexTest {
+    private LikeIndex likeIndex;
+
+    @BeforeEach
+    public void beforeEach() {
+        // БД для этих проверок не нужна, индекс наполняется напрямую
+        likeIndex = new LikeIndex(null);
+        likeIndex.addLike(1L, 1L);
+        likeIndex.addLike(1L, 2L);
+        likeIndex.addLike(2L, 1L);
+        likeIndex.addLike(2L, 2L);
+        likeIndex.addLike(2L, 3L);
+        likeIndex.addLike(3L, 1L);
+        likeIndex.addLike(3L, 4L);
+    }
+
+    @Test
+    public void testRecommendFromMostSimilarUsers() {
+        // у пользователя 2 два общих лайка с пользователем 1, у пользователя 3 - только один
+        Assertions.assertArrayEquals(new long[]{3L}, likeIndex.recommend(1L));
+        // самый похожий на пользователя 2 - пользователь 1, все его фильмы уже лайкнуты
+        Assertions.assertArrayEquals(new long[]{}, likeIndex.recommend(2L));
+        Assertions.assertArrayEquals(new long[]{2L, 3L}, likeIndex.recommend(3L));
+    }
+
+    @Test
+    public void testRecommendAfterIncrementalUpdates() {
+        likeIndex.removeLike(2L, 2L);
+        // теперь пользователи 2 и 3 одинаково похожи на пользователя 1
+        Assertions.assertArrayEquals(new long[]{3L, 4L}, likeIndex.recommend(1L));
+
+        likeIndex.removeUser(3L);
+        likeIndex.setFilmLikes(3L, List.of());
+        Assertions.assertArrayEquals(new long[]{}, likeIndex.recommend(1L));
+        Assertions.assertArrayEquals(new long[]{}, likeIndex.recommend(5L));
+    }
+
+    @Test
+    public void testAddLikesMergesWithExisting() {
+        // повтор уже поставленного лайка и повтор внутри пакета не дублируются в массивах
+        likeIndex.addLikes(List.of(new FilmLike(1L, 1L), new FilmLike(1L, 5L), new FilmLike(1L, 4L),
+                new FilmLike(4L, 4L), new FilmLike(4L, 4L)));
+
+        Assertions.assertArrayEquals(new long[]{1L, 2L, 3L, 4L, 5L}, likeIndex.getLikers(1L));
+        Assertions.assertArrayEquals(new long[]{3L, 4L}, likeIndex.getLikers(4L));
+        // у пользователя 4 теперь те же фильмы, что у самого похожего на него пользователя 3
+        Assertions.assertArrayEquals(new long[]{}, likeIndex.recommend(4L));
+    }
+}
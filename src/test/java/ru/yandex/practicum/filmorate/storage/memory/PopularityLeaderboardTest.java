@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class PopularityLeaderboardTest {
+    private PopularityLeaderboard leaderboard;
+
+    @BeforeEach
+    public void beforeEach() {
+        // БД для этих проверок не нужна, рейтинг наполняется напрямую
+        leaderboard = new PopularityLeaderboard(null);
+        leaderboard.put(film(1L, 2010, Set.of(1L, 2L), Set.of(1L, 2L)));
+        leaderboard.put(film(2L, 2010, Set.of(2L), Set.of(1L, 2L, 3L)));
+        leaderboard.put(film(3L, 1999, Set.of(1L), Set.of()));
+        leaderboard.put(film(4L, 1999, Set.of(2L), Set.of(4L)));
+    }
+
+    @Test
+    public void testGlobalOrderByLikesThenId() {
+        Assertions.assertEquals(List.of(2L, 1L, 4L, 3L), leaderboard.getTop(10, null, null));
+        Assertions.assertEquals(List.of(2L, 1L), leaderboard.getTop(2, null, null));
+    }
+
+    @Test
+    public void testFilterByGenreAndYear() {
+        Assertions.assertEquals(List.of(1L, 3L), leaderboard.getTop(10, 1L, null));
+        Assertions.assertEquals(List.of(4L, 3L), leaderboard.getTop(10, null, Year.of(1999)));
+        Assertions.assertEquals(List.of(2L, 1L), leaderboard.getTop(10, 2L, Year.of(2010)));
+        Assertions.assertEquals(List.of(), leaderboard.getTop(10, 5L, Year.of(2010)));
+    }
+
+    @Test
+    public void testLikeCountChangeMovesFilm() {
+        leaderboard.addLikes(Map.of(3L, 5L));
+        Assertions.assertEquals(List.of(3L, 2L, 1L, 4L), leaderboard.getTop(10, null, null));
+        Assertions.assertEquals(List.of(3L, 1L), leaderboard.getTop(10, 1L, null));
+
+        leaderboard.remove(3L);
+        Assertions.assertEquals(List.of(2L, 1L, 4L), leaderboard.getTop(10, null, null));
+        Assertions.assertEquals(List.of(1L), leaderboard.getTop(10, 1L, null));
+    }
+
+    @Test
+    public void testUserDeletionDeltas() {
+        // пользователь лайкал фильмы 1 и 2: после его удаления у них по одному лайку, как у фильма 4
+        leaderboard.addLikes(Map.of(1L, -1L, 2L, -1L));
+        Assertions.assertEquals(List.of(2L, 1L, 4L, 3L), leaderboard.getTop(10, null, null));
+        leaderboard.addLikes(Map.of(2L, -2L));
+        Assertions.assertEquals(List.of(1L, 4L, 2L, 3L), leaderboard.getTop(10, null, null));
+
+        leaderboard.resetLikeCounts();
+        Assertions.assertEquals(List.of(1L, 2L, 3L, 4L), leaderboard.getTop(10, null, null));
+        Assertions.assertEquals(List.of(3L, 4L), leaderboard.getTop(10, null, Year.of(1999)));
+    }
+
+    @Test
+    public void testRankPagesAfterCursor() {
+        Set<Long> matched = Set.of(1L, 3L, 4L, 99L);
+        Assertions.assertEquals(List.of(1L, 4L, 3L), leaderboard.rank(matched, null, Long.MAX_VALUE));
+        Assertions.assertEquals(List.of(1L, 4L), leaderboard.rank(matched, null, 2));
+        Assertions.assertEquals(List.of(3L), leaderboard.rank(matched, 4L, 2));
+        // курсор не обязан входить в выдачу: страница начинается после его места в рейтинге
+        Assertions.assertEquals(List.of(1L, 4L), leaderboard.rank(matched, 2L, 2));
+        Assertions.assertEquals(List.of(), leaderboard.rank(matched, 3L, 2));
+        Assertions.assertEquals(List.of(), leaderboard.rank(matched, 99L, 2));
+        Assertions.assertEquals(List.of(), leaderboard.rank(matched, null, 0));
+    }
+
+    private Film film(Long id, int year, Set<Long> genreIds, Set<Long> likes) {
+        return Film.builder()
+                .id(id)
+                .name("Film " + id)
+                .description("description")
+                .releaseDate(LocalDate.of(year, 1, 1))
+                .duration(100)
+                .likes(likes)
+                .genres(genreIds.stream()
+                        .map(genreId -> Genre.builder().id(genreId).build())
+                        .collect(Collectors.toSet()))
+                .build();
+    }
+}
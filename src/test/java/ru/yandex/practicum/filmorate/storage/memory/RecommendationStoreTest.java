@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class RecommendationStoreTest {
+    private LikeIndex likeIndex;
+    private RecommendationStore recommendationStore;
+
+    @BeforeEach
+    public void beforeEach() {
+        // БД для этих проверок не нужна, индекс наполняется напрямую
+        likeIndex = new LikeIndex(null);
+        likeIndex.addLike(1L, 1L);
+        likeIndex.addLike(1L, 2L);
+        likeIndex.addLike(2L, 1L);
+        likeIndex.addLike(2L, 2L);
+        likeIndex.addLike(2L, 3L);
+        likeIndex.addLike(3L, 1L);
+        likeIndex.addLike(3L, 4L);
+        recommendationStore = new RecommendationStore(likeIndex, Duration.ofHours(1), Duration.ofHours(1));
+    }
+
+    @Test
+    public void testLikeOfMostSimilarUserResetsNeighbours() {
+        Assertions.assertArrayEquals(new long[]{3L}, recommendationStore.get(1L));
+
+        // самый похожий на пользователя 1 - пользователь 2, его новый лайк должен попасть в рекомендации 1,
+        // хотя сам пользователь 1 фильм 5 не лайкал
+        likeIndex.addLike(2L, 5L);
+        recommendationStore.invalidateLike(2L, 5L);
+        Assertions.assertArrayEquals(new long[]{3L, 5L}, recommendationStore.get(1L));
+
+        likeIndex.removeLike(2L, 3L);
+        recommendationStore.invalidateLike(2L, 3L);
+        Assertions.assertArrayEquals(new long[]{5L}, recommendationStore.get(1L));
+    }
+
+    @Test
+    public void testUnrelatedLikeKeepsEntry() {
+        long[] cached = recommendationStore.get(1L);
+
+        // у пользователей 4 и 5 нет общих лайков с пользователем 1
+        likeIndex.addLike(4L, 6L);
+        likeIndex.addLike(5L, 6L);
+        recommendationStore.invalidateLike(5L, 6L);
+        Assertions.assertSame(cached, recommendationStore.get(1L));
+    }
+}